@@ -0,0 +1,72 @@
+package fr.leabar.zstructure.benchmark;
+
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.io.ZStructureReader;
+import fr.leabar.zstructure.io.ZStructureWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IoBenchmark {
+
+    @Param({"16", "64", "128"})
+    public int size;
+
+    @Param({"0.2", "1.0"})
+    public double density;
+
+    @Param({"4", "64"})
+    public int paletteSize;
+
+    private ZStructureData structure;
+    private ZStructureWriter writer;
+    private ZStructureReader reader;
+    private File file;
+    private ByteBuffer mapped;
+
+    @Setup
+    public void setup() throws IOException {
+        structure = StructureFixtures.structure(size, density, paletteSize);
+        writer = new ZStructureWriter();
+        reader = new ZStructureReader();
+        file = File.createTempFile("zstructure-bench", ".zstruct");
+        writer.write(structure, file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        mapped = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(structure, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public ZStructureData readFile() throws IOException {
+        return reader.read(file);
+    }
+
+    @Benchmark
+    public ZStructureData readBuffer() throws IOException {
+        return reader.read(mapped.duplicate());
+    }
+
+    @Benchmark
+    public ZStructureReader.ZStructureMetadata readMetadata() throws IOException {
+        return reader.readMetadata(file);
+    }
+}
@@ -0,0 +1,64 @@
+package fr.leabar.zstructure.benchmark;
+
+import fr.leabar.zstructure.ZStructure;
+import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.data.ZStructureData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueryBenchmark {
+
+    @Param({"64", "128"})
+    public int size;
+
+    @Param({"0.2", "1.0"})
+    public double density;
+
+    @Param({"4", "64"})
+    public int paletteSize;
+
+    private ZStructureData structure;
+    private int x, y, z;
+
+    @Setup
+    public void setup() {
+        structure = StructureFixtures.structure(size, density, paletteSize);
+    }
+
+    @Setup(Level.Iteration)
+    public void position() {
+        x = size / 3;
+        y = size / 2;
+        z = size / 5;
+    }
+
+    @Benchmark
+    public ZStructureBlock getBlockAt() {
+        return structure.getBlockAt(x, y, z);
+    }
+
+    @Benchmark
+    public int getPaletteIndexAt() {
+        return structure.getPaletteIndexAt(x, y, z);
+    }
+
+    @Benchmark
+    public void forEachBlockInRegion(Blackhole blackhole) {
+        structure.forEachBlockInRegion(x, y, z, x + 7, y + 7, z + 7, blackhole::consume);
+    }
+
+    @Benchmark
+    public void forEachBlockIndexInRegion(Blackhole blackhole) {
+        structure.forEachBlockIndexInRegion(x, y, z, x + 7, y + 7, z + 7, (bx, by, bz, paletteIndex) -> blackhole.consume(paletteIndex));
+    }
+
+    @Benchmark
+    public ZStructure.StructureStats structureStats() {
+        return new ZStructure.StructureStats(structure);
+    }
+}
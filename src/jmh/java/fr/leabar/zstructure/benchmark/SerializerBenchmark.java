@@ -0,0 +1,42 @@
+package fr.leabar.zstructure.benchmark;
+
+import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.serializer.ZStructureSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializerBenchmark {
+
+    @Param({"16", "48"})
+    public int size;
+
+    @Param({"0.2", "1.0"})
+    public double density;
+
+    @Param({"4", "64"})
+    public int paletteSize;
+
+    private List<ZStructureBlock> blocks;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() {
+        blocks = StructureFixtures.blocks(size, density, paletteSize);
+        serialized = ZStructureSerializer.serializeBlocks(blocks);
+    }
+
+    @Benchmark
+    public byte[] serializeBlocks() {
+        return ZStructureSerializer.serializeBlocks(blocks);
+    }
+
+    @Benchmark
+    public List<ZStructureBlock> deserializeBlocks() {
+        return ZStructureSerializer.deserializeBlocks(serialized);
+    }
+}
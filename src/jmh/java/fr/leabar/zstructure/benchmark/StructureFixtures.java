@@ -0,0 +1,47 @@
+package fr.leabar.zstructure.benchmark;
+
+import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.data.ZStructureData;
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+final class StructureFixtures {
+    static final long SEED = 0x5A535452L;
+
+    private StructureFixtures() {}
+
+    static List<ZStructureBlock> blocks(int size, double density, int paletteSize) {
+        List<Material> materials = new ArrayList<>();
+        for (Material material : Material.values()) {
+            if (material.isBlock() && !material.isAir() && !material.name().startsWith("LEGACY_")) {
+                materials.add(material);
+                if (materials.size() == paletteSize) {
+                    break;
+                }
+            }
+        }
+
+        Random random = new Random(SEED);
+        List<ZStructureBlock> blocks = new ArrayList<>(size * size * size);
+        Material current = materials.get(0);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    if (random.nextDouble() < 0.1) {
+                        current = materials.get(random.nextInt(materials.size()));
+                    }
+                    Material material = random.nextDouble() < density ? current : Material.AIR;
+                    blocks.add(new ZStructureBlock(x, y, z, material, material.getKey().toString()));
+                }
+            }
+        }
+        return blocks;
+    }
+
+    static ZStructureData structure(int size, double density, int paletteSize) {
+        return new ZStructureData("bench-" + size, size, size, size, blocks(size, density, paletteSize));
+    }
+}
@@ -1,89 +1,251 @@
 package fr.leabar.zstructure;
 
+import fr.leabar.zstructure.batch.ZStructureBatchExecutor;
+import fr.leabar.zstructure.batch.ZStructureBatchProgress;
+import fr.leabar.zstructure.batch.ZStructureBatchResult;
+import fr.leabar.zstructure.cache.ZStructureCache;
+import fr.leabar.zstructure.capture.ZStructureCapture;
 import fr.leabar.zstructure.data.ZStructureBlock;
 import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructureDelta;
+import fr.leabar.zstructure.data.ZStructurePalette;
+import fr.leabar.zstructure.io.ZStructureDictionary;
+import fr.leabar.zstructure.io.ZStructureDictionaryRegistry;
+import fr.leabar.zstructure.io.ZStructurePack;
+import fr.leabar.zstructure.io.ZStructurePackWriter;
 import fr.leabar.zstructure.io.ZStructureReader;
+import fr.leabar.zstructure.io.ZStructureSectionExecutor;
+import fr.leabar.zstructure.io.ZStructureStreamReader;
+import fr.leabar.zstructure.io.ZStructureStreamWriter;
 import fr.leabar.zstructure.io.ZStructureWriter;
+import fr.leabar.zstructure.metrics.ZStructureMetrics;
+import fr.leabar.zstructure.metrics.ZStructureMetricsListener;
+import fr.leabar.zstructure.metrics.ZStructureStage;
+import fr.leabar.zstructure.placement.PlacementCursor;
+import fr.leabar.zstructure.placement.PlacementJob;
+import fr.leabar.zstructure.placement.PlacementMode;
+import fr.leabar.zstructure.placement.PlacementPriority;
+import fr.leabar.zstructure.placement.PlacementReset;
+import fr.leabar.zstructure.placement.ZStructurePlacementScheduler;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 public class ZStructure {
     private final ZStructureWriter writer;
     private final ZStructureReader reader;
+    private final ZStructureDictionaryRegistry dictionaryRegistry = new ZStructureDictionaryRegistry();
+    private final ZStructureCapture capture;
+    private final ZStructurePlacementScheduler placementScheduler;
+    private volatile ZStructureSectionExecutor sectionExecutor = new ZStructureSectionExecutor(Runtime.getRuntime().availableProcessors());
+    private volatile ZStructureBatchExecutor batchExecutor = new ZStructureBatchExecutor(sectionExecutor);
+    private volatile ZStructureCache cache;
+    private volatile ZStructureMetricsListener metricsListener;
 
     public ZStructure() {
-        writer = new ZStructureWriter();
-        reader = new ZStructureReader();
+        this(resolveProvidingPlugin());
     }
 
     public ZStructure(int compressionLevel) {
+        this(resolveProvidingPlugin(), compressionLevel);
+    }
+
+    public ZStructure(Plugin plugin) {
+        writer = new ZStructureWriter();
+        reader = new ZStructureReader(dictionaryRegistry);
+        writer.setSectionExecutor(sectionExecutor);
+        reader.setSectionExecutor(sectionExecutor);
+        capture = new ZStructureCapture(plugin);
+        placementScheduler = plugin == null ? null : new ZStructurePlacementScheduler(plugin);
+    }
+
+    public ZStructure(Plugin plugin, int compressionLevel) {
         writer = new ZStructureWriter(compressionLevel);
-        reader = new ZStructureReader();
+        reader = new ZStructureReader(dictionaryRegistry);
+        writer.setSectionExecutor(sectionExecutor);
+        reader.setSectionExecutor(sectionExecutor);
+        capture = new ZStructureCapture(plugin);
+        placementScheduler = plugin == null ? null : new ZStructurePlacementScheduler(plugin);
     }
 
-    public ZStructureData captureRegion(World world, Location corner1, Location corner2, String name) {
-        int minX = Math.min(corner1.getBlockX(), corner2.getBlockX());
-        int maxX = Math.max(corner1.getBlockX(), corner2.getBlockX());
-        int minY = Math.min(corner1.getBlockY(), corner2.getBlockY());
-        int maxY = Math.max(corner1.getBlockY(), corner2.getBlockY());
-        int minZ = Math.min(corner1.getBlockZ(), corner2.getBlockZ());
-        int maxZ = Math.max(corner1.getBlockZ(), corner2.getBlockZ());
-        int width  = maxX - minX + 1;
-        int height = maxY - minY + 1;
-        int length = maxZ - minZ + 1;
-
-        List<ZStructureBlock> blocks = new ArrayList<>();
-        for (int x = minX; x <= maxX; x++) {
-            for (int y = minY; y <= maxY; y++) {
-                for (int z = minZ; z <= maxZ; z++) {
-                    Block worldBlock = world.getBlockAt(x, y, z);
-                    int relX = x - minX;
-                    int relY = y - minY;
-                    int relZ = z - minZ;
-                    blocks.add(ZStructureBlock.from(relX, relY, relZ, worldBlock.getBlockData()));
-                }
-            }
+    private static Plugin resolveProvidingPlugin() {
+        try {
+            return JavaPlugin.getProvidingPlugin(ZStructure.class);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return null;
         }
+    }
 
-        return new ZStructureData(name, width, height, length, blocks);
+    public ZStructureData captureRegion(World world, Location corner1, Location corner2, String name) {
+        return capture.capture(world, corner1, corner2, name);
     }
 
     public CompletableFuture<ZStructureData> captureRegionAsync(World world, Location corner1, Location corner2, String name) {
-        return CompletableFuture.supplyAsync(
-                () -> captureRegion(world, corner1, corner2, name)
-        );
+        return capture.captureAsync(world, corner1, corner2, name);
     }
 
     public void saveStructure(ZStructureData structure, File file) throws IOException {
         writer.write(structure, file);
+        invalidateCache(file);
     }
 
     public CompletableFuture<Void> saveStructureAsync(ZStructureData structure, File file) {
-        return writer.writeAsync(structure, file);
+        return writer.writeAsync(structure, file).thenRun(() -> invalidateCache(file));
     }
 
     public ZStructureData loadStructure(File file) throws IOException {
-        return reader.read(file);
+        ZStructureCache cache = this.cache;
+        return cache == null ? reader.read(file) : cache.getStructure(file, reader::read);
     }
 
     public CompletableFuture<ZStructureData> loadStructureAsync(File file) {
-        return reader.readAsync(file);
+        ZStructureCache cache = this.cache;
+        return cache == null ? reader.readAsync(file) : cache.getStructureAsync(file, reader::read, ForkJoinPool.commonPool());
+    }
+
+    public CompletableFuture<ZStructureBatchResult<ZStructureData>> loadAll(Collection<File> files) {
+        return loadAll(files, null);
+    }
+
+    public CompletableFuture<ZStructureBatchResult<ZStructureData>> loadAll(Collection<File> files, Consumer<ZStructureBatchProgress> progressCallback) {
+        ZStructureBatchExecutor executor = batchExecutor;
+        return executor.submit(files, file -> {
+            ZStructureCache cache = this.cache;
+            return cache == null ? loadBatched(executor, file) : cache.getStructure(file, f -> loadBatched(executor, f));
+        }, progressCallback);
+    }
+
+    private ZStructureData loadBatched(ZStructureBatchExecutor executor, File file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mapped.load();
+        return executor.compute(() -> reader.read(mapped));
+    }
+
+    public CompletableFuture<ZStructureBatchResult<Long>> saveAll(Map<ZStructureData, File> structures) {
+        return saveAll(structures, null);
+    }
+
+    public CompletableFuture<ZStructureBatchResult<Long>> saveAll(Map<ZStructureData, File> structures, Consumer<ZStructureBatchProgress> progressCallback) {
+        Map<File, ZStructureData> targets = new LinkedHashMap<>();
+        structures.forEach((structure, file) -> targets.put(file, structure));
+        ZStructureBatchExecutor executor = batchExecutor;
+        return executor.submit(targets.keySet(), file -> {
+            ZStructureData structure = targets.get(file);
+            byte[] encoded = executor.compute(() -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                writer.write(structure, out);
+                return out.toByteArray();
+            });
+            Files.write(file.toPath(), encoded);
+            invalidateCache(file);
+            return (long) encoded.length;
+        }, progressCallback);
+    }
+
+    public CompletableFuture<ZStructureBatchResult<ZStructureData>> loadDirectory(File directory) {
+        return loadDirectory(directory, null);
+    }
+
+    public CompletableFuture<ZStructureBatchResult<ZStructureData>> loadDirectory(File directory, Consumer<ZStructureBatchProgress> progressCallback) {
+        List<File> files;
+        try {
+            files = ZStructureBatchExecutor.listStructures(directory);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return loadAll(files, progressCallback);
+    }
+
+    public CompletableFuture<ZStructureBatchResult<ZStructureReader.ZStructureMetadata>> scanDirectory(File directory) {
+        List<File> files;
+        try {
+            files = ZStructureBatchExecutor.listStructures(directory);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return batchExecutor.submit(files, this::getStructureInfo, null);
+    }
+
+    public ZStructureStreamWriter openStructureWriter(File file, String name, int width, int height, int length) throws IOException {
+        return writer.openStream(file, name, width, height, length);
+    }
+
+    public ZStructureStreamReader openStructureReader(File file) throws IOException {
+        return reader.openStream(file);
+    }
+
+    public ZStructureDelta createDelta(ZStructureData base, ZStructureData target) {
+        return ZStructureDelta.between(base, target);
+    }
+
+    public void saveDelta(ZStructureDelta delta, File file) throws IOException {
+        writer.writeDelta(delta, file);
+    }
+
+    public ZStructureDelta loadDelta(File file) throws IOException {
+        return reader.readDelta(file);
+    }
+
+    public ZStructureData loadStructure(File baseFile, File deltaFile) throws IOException {
+        return loadDelta(deltaFile).applyTo(loadStructure(baseFile));
+    }
+
+    public ZStructurePack openPack(File file) throws IOException {
+        return ZStructurePack.open(file, reader);
+    }
+
+    public ZStructurePackWriter openPackWriter(File file) throws IOException {
+        return ZStructurePackWriter.open(file, writer, reader);
+    }
+
+    public ZStructureData loadRegion(File file, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) throws IOException {
+        return reader.readRegion(file, minX, minY, minZ, maxX, maxY, maxZ);
     }
 
     public ZStructureReader.ZStructureMetadata getStructureInfo(File file) throws IOException {
-        return reader.readMetadata(file);
+        ZStructureCache cache = this.cache;
+        return cache == null ? reader.readMetadata(file) : cache.getMetadata(file, reader::readMetadata);
+    }
+
+    public void enableCache(long maximumBytes) {
+        cache = new ZStructureCache(maximumBytes);
+    }
+
+    public void disableCache() {
+        cache = null;
+    }
+
+    public ZStructureCache getCache() {
+        return cache;
+    }
+
+    private void invalidateCache(File file) {
+        ZStructureCache cache = this.cache;
+        if (cache != null) {
+            cache.invalidate(file);
+        }
     }
 
     public void placeStructure(
@@ -91,7 +253,37 @@ public class ZStructure {
             World world,
             Location location
     ) {
-        placeStructure(structure, world, location, block -> true);
+        int baseX = location.getBlockX();
+        int baseY = location.getBlockY();
+        int baseZ = location.getBlockZ();
+        ZStructurePalette palette = structure.getPalette();
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+
+        structure.forEachBlockIndex((x, y, z, paletteIndex) ->
+                world.getBlockAt(baseX + x, baseY + y, baseZ + z).setBlockData(palette.getSharedBlockData(paletteIndex))
+        );
+        ZStructureMetrics.record(metrics, ZStructureStage.PLACE, start, 0, 0, structure.getBlockCount());
+    }
+
+    public void placeStructure(
+            ZStructureData structure,
+            World world,
+            Location location,
+            PlacementMode mode
+    ) {
+        PlacementCursor cursor = PlacementCursor.of(mode, structure, world, location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        ZStructurePalette palette = structure.getPalette();
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+
+        while (cursor.next()) {
+            int paletteIndex = structure.getPaletteIndexAt(cursor.x(), cursor.y(), cursor.z());
+            if (paletteIndex >= 0) {
+                cursor.block().setBlockData(palette.getSharedBlockData(paletteIndex), cursor.applyPhysics());
+            }
+        }
+        ZStructureMetrics.record(metrics, ZStructureStage.PLACE, start, 0, 0, structure.getBlockCount());
     }
 
     public void placeStructure(
@@ -103,39 +295,97 @@ public class ZStructure {
         int baseX = location.getBlockX();
         int baseY = location.getBlockY();
         int baseZ = location.getBlockZ();
+        ZStructurePalette palette = structure.getPalette();
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+        long[] placed = new long[1];
+
+        structure.forEachBlockIndex((x, y, z, paletteIndex) -> {
+            ZStructureBlock block = new ZStructureBlock(x, y, z, palette.getMaterial(paletteIndex), palette.getState(paletteIndex));
+            if (filter.test(block)) {
+                world.getBlockAt(baseX + x, baseY + y, baseZ + z).setBlockData(palette.getSharedBlockData(paletteIndex));
+                placed[0]++;
+            }
+        });
+        ZStructureMetrics.record(metrics, ZStructureStage.PLACE, start, 0, 0, placed[0]);
+    }
 
-        structure.forEachBlockFiltered(filter, block -> {
-            int worldX = baseX + block.x();
-            int worldY = baseY + block.y();
-            int worldZ = baseZ + block.z();
-            world.getBlockAt(worldX, worldY, worldZ).setBlockData(block.getBlockData());
+    public void placeStructure(
+            ZStructureData structure,
+            World world,
+            Location location,
+            int minX, int minY, int minZ,
+            int maxX, int maxY, int maxZ
+    ) {
+        int baseX = location.getBlockX();
+        int baseY = location.getBlockY();
+        int baseZ = location.getBlockZ();
+        ZStructurePalette palette = structure.getPalette();
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+        long[] placed = new long[1];
+
+        structure.forEachBlockIndexInRegion(minX, minY, minZ, maxX, maxY, maxZ, (x, y, z, paletteIndex) -> {
+            world.getBlockAt(baseX + x, baseY + y, baseZ + z).setBlockData(palette.getSharedBlockData(paletteIndex));
+            placed[0]++;
         });
+        ZStructureMetrics.record(metrics, ZStructureStage.PLACE, start, 0, 0, placed[0]);
     }
 
     public CompletableFuture<Void> placeStructureAsync(ZStructureData structure, World world, Location location, Consumer<Double> progressCallback) {
-        return CompletableFuture.runAsync(() -> {
-            int baseX = location.getBlockX();
-            int baseY = location.getBlockY();
-            int baseZ = location.getBlockZ();
-            List<ZStructureBlock> blocks = structure.getBlocks();
-            int total  = blocks.size();
-            int placed = 0;
-
-            for (ZStructureBlock block : blocks) {
-                int worldX = baseX + block.x();
-                int worldY = baseY + block.y();
-                int worldZ = baseZ + block.z();
-                world.getBlockAt(worldX, worldY, worldZ)
-                        .setBlockData(block.getBlockData());
-                placed++;
-                if (progressCallback != null && placed%100 == 0) {
-                    progressCallback.accept((double) placed/total);
-                }
-            }
-            if (progressCallback != null) {
-                progressCallback.accept(1.0);
+        if (placementScheduler == null) {
+            return CompletableFuture.runAsync(() -> placeUnscheduled(structure, world, location, progressCallback));
+        }
+        return placeStructureAsync(structure, world, location, PlacementPriority.NORMAL, progressCallback).getFuture();
+    }
+
+    private void placeUnscheduled(ZStructureData structure, World world, Location location, Consumer<Double> progressCallback) {
+        int baseX = location.getBlockX();
+        int baseY = location.getBlockY();
+        int baseZ = location.getBlockZ();
+        ZStructurePalette palette = structure.getPalette();
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+        int total = structure.getBlockCount();
+        int[] placed = new int[1];
+
+        structure.forEachBlockIndex((x, y, z, paletteIndex) -> {
+            world.getBlockAt(baseX + x, baseY + y, baseZ + z).setBlockData(palette.getSharedBlockData(paletteIndex));
+            placed[0]++;
+            if (progressCallback != null && placed[0]%100 == 0) {
+                progressCallback.accept((double) placed[0]/total);
             }
         });
+        if (progressCallback != null) {
+            progressCallback.accept(1.0);
+        }
+        ZStructureMetrics.record(metrics, ZStructureStage.PLACE, start, 0, 0, placed[0]);
+    }
+
+    public PlacementJob placeStructureAsync(ZStructureData structure, World world, Location location, PlacementPriority priority, Consumer<Double> progressCallback) {
+        return placeStructureAsync(structure, world, location, PlacementMode.CAPTURE_ORDER, priority, progressCallback);
+    }
+
+    public PlacementJob placeStructureAsync(ZStructureData structure, World world, Location location, PlacementMode mode, PlacementPriority priority, Consumer<Double> progressCallback) {
+        if (placementScheduler == null) {
+            throw new IllegalStateException("Async placement requires a plugin to schedule blocks on the main thread");
+        }
+        return placementScheduler.submit(structure, world, location, mode, priority, progressCallback);
+    }
+
+    public PlacementReset resetStructureAsync(ZStructureData structure, World world, Location location, PlacementPriority priority, Consumer<Double> progressCallback) {
+        return resetStructureAsync(structure, world, location, PlacementMode.CAPTURE_ORDER, priority, progressCallback);
+    }
+
+    public PlacementReset resetStructureAsync(ZStructureData structure, World world, Location location, PlacementMode mode, PlacementPriority priority, Consumer<Double> progressCallback) {
+        if (placementScheduler == null) {
+            throw new IllegalStateException("Async placement requires a plugin to schedule blocks on the main thread");
+        }
+        return placementScheduler.submitReset(structure, world, location, mode, priority, progressCallback);
+    }
+
+    public ZStructurePlacementScheduler getPlacementScheduler() {
+        return placementScheduler;
     }
 
     public static final Predicate<ZStructureBlock> IGNORE_AIR = block -> !block.isAir();
@@ -172,9 +422,12 @@ public class ZStructure {
             this.structure = structure;
             this.nonAirBlocks  = structure.getNonAirBlockCount();
             this.materialCount = new HashMap<>();
-            structure.forEachBlock(
-                    block -> materialCount.merge(block.material(), 1, Integer::sum)
-            );
+            int[] paletteCounts = structure.getPaletteCounts();
+            for (int i = 0; i < paletteCounts.length; i++) {
+                if (paletteCounts[i] > 0) {
+                    materialCount.merge(structure.getPalette().getMaterial(i), paletteCounts[i], Integer::sum);
+                }
+            }
         }
 
         public int getTotalBlocks() {
@@ -224,4 +477,51 @@ public class ZStructure {
     public int getCompressionLevel() {
         return writer.getCompressionLevel();
     }
+
+    public void setMetricsListener(ZStructureMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+        writer.setMetricsListener(metricsListener);
+        reader.setMetricsListener(metricsListener);
+        capture.setMetricsListener(metricsListener);
+        if (placementScheduler != null) {
+            placementScheduler.setMetricsListener(metricsListener);
+        }
+    }
+
+    public ZStructureMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    public ZStructureDictionaryRegistry getDictionaryRegistry() {
+        return dictionaryRegistry;
+    }
+
+    public ZStructureDictionary trainDictionary(Collection<ZStructureData> structures, int dictionarySize) throws IOException {
+        return writer.trainDictionary(structures, dictionarySize);
+    }
+
+    public void setDictionary(ZStructureDictionary dictionary) {
+        writer.setDictionary(dictionary == null ? null : dictionaryRegistry.register(dictionary));
+    }
+
+    public ZStructureDictionary getDictionary() {
+        return writer.getDictionary();
+    }
+
+    public synchronized void setParallelism(int parallelism) {
+        ZStructureSectionExecutor previous = sectionExecutor;
+        sectionExecutor = new ZStructureSectionExecutor(parallelism);
+        writer.setSectionExecutor(sectionExecutor);
+        reader.setSectionExecutor(sectionExecutor);
+        batchExecutor = new ZStructureBatchExecutor(sectionExecutor);
+        previous.shutdown();
+    }
+
+    public int getParallelism() {
+        return sectionExecutor.getParallelism();
+    }
+
+    public synchronized void shutdown() {
+        sectionExecutor.shutdown();
+    }
 }
@@ -0,0 +1,152 @@
+package fr.leabar.zstructure.batch;
+
+import fr.leabar.zstructure.io.ZStructureSectionExecutor;
+import fr.leabar.zstructure.io.format.ZStructureFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public class ZStructureBatchExecutor {
+    private static final int IN_FLIGHT_PER_WORKER = 4;
+
+    private final ZStructureSectionExecutor sectionExecutor;
+    private final boolean ownsSectionExecutor;
+
+    public ZStructureBatchExecutor(int parallelism) {
+        this(new ZStructureSectionExecutor(parallelism), true);
+    }
+
+    public ZStructureBatchExecutor(ZStructureSectionExecutor sectionExecutor) {
+        this(sectionExecutor, false);
+    }
+
+    private ZStructureBatchExecutor(ZStructureSectionExecutor sectionExecutor, boolean ownsSectionExecutor) {
+        this.sectionExecutor = sectionExecutor;
+        this.ownsSectionExecutor = ownsSectionExecutor;
+    }
+
+    public <T> CompletableFuture<ZStructureBatchResult<T>> submit(Collection<File> files, Task<T> task, Consumer<ZStructureBatchProgress> progressCallback) {
+        List<File> items = List.copyOf(files);
+        if (!sectionExecutor.tryAcquire()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Section executor shut down"));
+        }
+        CompletableFuture<ZStructureBatchResult<T>> future = new CompletableFuture<>();
+        Thread.ofVirtual().name("zstructure-batch").start(() -> {
+            ZStructureBatchResult<T> result = null;
+            Throwable failure = null;
+            try {
+                result = run(items, task, progressCallback);
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                sectionExecutor.release();
+            }
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        });
+        return future;
+    }
+
+    private <T> ZStructureBatchResult<T> run(List<File> items, Task<T> task, Consumer<ZStructureBatchProgress> progressCallback) throws InterruptedException {
+        Map<File, T> results = new ConcurrentHashMap<>();
+        Map<File, Exception> failures = new ConcurrentHashMap<>();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(getParallelism() * IN_FLIGHT_PER_WORKER);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (File file : items) {
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        results.put(file, task.run(file));
+                    } catch (Exception e) {
+                        failures.put(file, e);
+                        failed.incrementAndGet();
+                    } catch (Throwable e) {
+                        failures.put(file, new RuntimeException("Error during batch task", e));
+                        failed.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                    }
+                    if (progressCallback != null) {
+                        progressCallback.accept(new ZStructureBatchProgress(file, completed.incrementAndGet(), failed.get(), items.size()));
+                    }
+                });
+            }
+        }
+
+        Map<File, T> orderedResults = new LinkedHashMap<>();
+        Map<File, Exception> orderedFailures = new LinkedHashMap<>();
+        for (File file : items) {
+            T result = results.get(file);
+            if (result != null) {
+                orderedResults.put(file, result);
+            } else if (failures.containsKey(file)) {
+                orderedFailures.put(file, failures.get(file));
+            }
+        }
+        return new ZStructureBatchResult<>(Collections.unmodifiableMap(orderedResults), Collections.unmodifiableMap(orderedFailures));
+    }
+
+    public <T> T compute(Computation<T> computation) throws IOException {
+        return sectionExecutor.compute(computation::compute);
+    }
+
+    public static List<File> listStructures(File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        List<File> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(ZStructureFormat.FILE_EXTENSION))
+                    .sorted()
+                    .forEach(path -> files.add(path.toFile()));
+        }
+        return files;
+    }
+
+    public int getParallelism() {
+        return sectionExecutor.getParallelism();
+    }
+
+    public ZStructureSectionExecutor getSectionExecutor() {
+        return sectionExecutor;
+    }
+
+    public void shutdown() {
+        if (ownsSectionExecutor) {
+            sectionExecutor.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Task<T> {
+        T run(File file) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Computation<T> {
+        T compute() throws IOException;
+    }
+}
@@ -0,0 +1,13 @@
+package fr.leabar.zstructure.batch;
+
+import java.io.File;
+
+public record ZStructureBatchProgress(File file, int completed, int failed, int total) {
+    public double getProgress() {
+        return total == 0 ? 1 : (double) completed / total;
+    }
+
+    public boolean isDone() {
+        return completed == total;
+    }
+}
@@ -0,0 +1,27 @@
+package fr.leabar.zstructure.batch;
+
+import java.io.File;
+import java.util.Map;
+
+public record ZStructureBatchResult<T>(Map<File, T> results, Map<File, Exception> failures) {
+    public int getSuccessCount() {
+        return results.size();
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+
+    public int getTotal() {
+        return results.size() + failures.size();
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZStructureBatch [%d succeeded, %d failed]", getSuccessCount(), getFailureCount());
+    }
+}
@@ -0,0 +1,222 @@
+package fr.leabar.zstructure.cache;
+
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.io.ZStructureReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+public class ZStructureCache {
+    private static final long METADATA_WEIGHT = 256;
+
+    private final long maximumWeight;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<Key, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long weight;
+
+    public ZStructureCache(long maximumWeight) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+    }
+
+    public ZStructureData getStructure(File file, Loader<ZStructureData> loader) throws IOException {
+        return get(Key.of(file, false), file, loader, ZStructureData::getMemoryUsage);
+    }
+
+    public CompletableFuture<ZStructureData> getStructureAsync(File file, Loader<ZStructureData> loader, Executor executor) {
+        return getAsync(file, false, loader, ZStructureData::getMemoryUsage, executor);
+    }
+
+    public ZStructureReader.ZStructureMetadata getMetadata(File file, Loader<ZStructureReader.ZStructureMetadata> loader) throws IOException {
+        return get(Key.of(file, true), file, loader, metadata -> METADATA_WEIGHT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Key key, File file, Loader<T> loader, ToLongFunction<T> weigher) throws IOException {
+        Object cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return (T) cached;
+        }
+
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(key, created);
+        if (existing != null) {
+            hits.incrementAndGet();
+            return (T) await(existing);
+        }
+        try {
+            cached = lookup(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                created.complete(cached);
+                return (T) cached;
+            }
+            misses.incrementAndGet();
+            T value = loader.load(file);
+            store(key, value, weigher.applyAsLong(value));
+            created.complete(value);
+            return value;
+        } catch (IOException | RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, created);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> getAsync(File file, boolean metadata, Loader<T> loader, ToLongFunction<T> weigher, Executor executor) {
+        Key key;
+        try {
+            key = Key.of(file, metadata);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Object cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture((T) cached);
+        }
+
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(key, created);
+        if (existing != null) {
+            hits.incrementAndGet();
+            return (CompletableFuture<T>) (CompletableFuture<?>) existing;
+        }
+        misses.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    T value = loader.load(file);
+                    store(key, value, weigher.applyAsLong(value));
+                    created.complete(value);
+                } catch (Throwable e) {
+                    created.completeExceptionally(e);
+                } finally {
+                    loading.remove(key, created);
+                }
+            });
+        } catch (RuntimeException e) {
+            loading.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) created;
+    }
+
+    private Object await(CompletableFuture<Object> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("Error loading structure", cause);
+        }
+    }
+
+    private synchronized Object lookup(Key key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    private synchronized void store(Key key, Object value, long valueWeight) {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> stale = iterator.next();
+            if (stale.getKey().path.equals(key.path) && stale.getKey().metadata == key.metadata) {
+                weight -= stale.getValue().weight;
+                iterator.remove();
+            }
+        }
+        if (valueWeight > maximumWeight) {
+            return;
+        }
+        entries.put(key, new Entry(value, valueWeight));
+        weight += valueWeight;
+
+        iterator = entries.entrySet().iterator();
+        while (weight > maximumWeight && iterator.hasNext()) {
+            weight -= iterator.next().getValue().weight;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidate(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (entry.getKey().path.equals(path)) {
+                weight -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), entries.size(), weight, maximumWeight);
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load(File file) throws IOException;
+    }
+
+    public record CacheStats(long hitCount, long missCount, long evictionCount, int entryCount, long weight, long maximumWeight) {
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ZStructureCache [%d entries, %d/%d bytes, %.1f%% hits, %d evictions]",
+                    entryCount, weight, maximumWeight, getHitRate() * 100, evictionCount);
+        }
+    }
+
+    private record Key(String path, long lastModified, long size, boolean metadata) {
+        static Key of(File file, boolean metadata) throws IOException {
+            File canonical = file.getCanonicalFile();
+            return new Key(canonical.getPath(), canonical.lastModified(), canonical.length(), metadata);
+        }
+    }
+
+    private record Entry(Object value, long weight) {
+    }
+}
@@ -0,0 +1,257 @@
+package fr.leabar.zstructure.capture;
+
+import fr.leabar.zstructure.data.ZStructureBlockStorage;
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructurePalette;
+import fr.leabar.zstructure.metrics.ZStructureMetrics;
+import fr.leabar.zstructure.metrics.ZStructureMetricsListener;
+import fr.leabar.zstructure.metrics.ZStructureStage;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ZStructureCapture {
+    private final Plugin plugin;
+    private final Executor executor;
+    private volatile ZStructureMetricsListener metricsListener;
+
+    public ZStructureCapture(Plugin plugin) {
+        this(plugin, ForkJoinPool.commonPool());
+    }
+
+    public ZStructureCapture(Plugin plugin, Executor executor) {
+        this.plugin = plugin;
+        this.executor = executor;
+    }
+
+    public ZStructureData capture(World world, Location corner1, Location corner2, String name) {
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+        Region region = Region.of(corner1, corner2);
+        region.cellCount();
+        List<ChunkSnapshot> snapshots = Bukkit.isPrimaryThread() ? takeSnapshots(world, region) : awaitSnapshots(world, region);
+        ZStructureMetrics.record(metrics, ZStructureStage.CAPTURE_SNAPSHOT, start, 0, 0, 0);
+        long encodeStart = ZStructureMetrics.start(metrics);
+        List<ChunkEncoding> chunks = new ArrayList<>();
+        for (ChunkSnapshot snapshot : snapshots) {
+            chunks.add(encodeChunk(snapshot, region));
+        }
+        ZStructureMetrics.record(metrics, ZStructureStage.CAPTURE_ENCODE, encodeStart, 0, 0, region.volume());
+        ZStructureData data = merge(chunks, region, name, metrics);
+        ZStructureMetrics.record(metrics, ZStructureStage.CAPTURE_TOTAL, start, 0, 0, data.getBlockCount());
+        return data;
+    }
+
+    public CompletableFuture<ZStructureData> captureAsync(World world, Location corner1, Location corner2, String name) {
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+        Region region = Region.of(corner1, corner2);
+        try {
+            region.cellCount();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return snapshotOnMainThread(world, region).thenCompose(snapshots -> {
+            ZStructureMetrics.record(metrics, ZStructureStage.CAPTURE_SNAPSHOT, start, 0, 0, 0);
+            LongAdder encodeNanos = metrics == null ? null : new LongAdder();
+            List<CompletableFuture<ChunkEncoding>> tasks = new ArrayList<>(snapshots.size());
+            for (ChunkSnapshot snapshot : snapshots) {
+                tasks.add(CompletableFuture.supplyAsync(() -> {
+                    long encodeStart = ZStructureMetrics.start(metrics);
+                    ChunkEncoding encoding = encodeChunk(snapshot, region);
+                    if (metrics != null) {
+                        encodeNanos.add(System.nanoTime() - encodeStart);
+                    }
+                    return encoding;
+                }, executor));
+            }
+            return CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).thenApplyAsync(ignored -> {
+                List<ChunkEncoding> chunks = new ArrayList<>(tasks.size());
+                for (CompletableFuture<ChunkEncoding> task : tasks) {
+                    chunks.add(task.join());
+                }
+                if (metrics != null) {
+                    metrics.onStage(ZStructureStage.CAPTURE_ENCODE, encodeNanos.sum(), 0, 0, region.volume());
+                }
+                ZStructureData data = merge(chunks, region, name, metrics);
+                ZStructureMetrics.record(metrics, ZStructureStage.CAPTURE_TOTAL, start, 0, 0, data.getBlockCount());
+                return data;
+            }, executor);
+        });
+    }
+
+    public ZStructureMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    public void setMetricsListener(ZStructureMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    private CompletableFuture<List<ChunkSnapshot>> snapshotOnMainThread(World world, Region region) {
+        if (Bukkit.isPrimaryThread()) {
+            try {
+                return CompletableFuture.completedFuture(takeSnapshots(world, region));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        if (plugin == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Async capture requires a plugin to schedule chunk snapshots on the main thread"));
+        }
+        CompletableFuture<List<ChunkSnapshot>> future = new CompletableFuture<>();
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            try {
+                future.complete(takeSnapshots(world, region));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private List<ChunkSnapshot> awaitSnapshots(World world, Region region) {
+        try {
+            return snapshotOnMainThread(world, region).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private List<ChunkSnapshot> takeSnapshots(World world, Region region) {
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+        for (int chunkX = region.minX >> 4; chunkX <= region.maxX >> 4; chunkX++) {
+            for (int chunkZ = region.minZ >> 4; chunkZ <= region.maxZ >> 4; chunkZ++) {
+                snapshots.add(world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false));
+            }
+        }
+        return snapshots;
+    }
+
+    private ChunkEncoding encodeChunk(ChunkSnapshot snapshot, Region region) {
+        int chunkMinX = snapshot.getX() << 4;
+        int chunkMinZ = snapshot.getZ() << 4;
+        ChunkEncoding encoding = new ChunkEncoding();
+        encoding.minX = Math.max(region.minX, chunkMinX);
+        encoding.maxX = Math.min(region.maxX, chunkMinX + 15);
+        encoding.minZ = Math.max(region.minZ, chunkMinZ);
+        encoding.maxZ = Math.min(region.maxZ, chunkMinZ + 15);
+        int sizeX = encoding.maxX - encoding.minX + 1;
+        int sizeZ = encoding.maxZ - encoding.minZ + 1;
+        encoding.indices = new ZStructureBlockStorage(sizeX * region.height() * sizeZ);
+
+        Map<BlockData, Integer> localIndex = new HashMap<>();
+        int index = 0;
+        for (int x = encoding.minX; x <= encoding.maxX; x++) {
+            for (int y = region.minY; y <= region.maxY; y++) {
+                for (int z = encoding.minZ; z <= encoding.maxZ; z++) {
+                    BlockData blockData = snapshot.getBlockData(x - chunkMinX, y, z - chunkMinZ);
+                    Integer paletteIndex = localIndex.get(blockData);
+                    if (paletteIndex == null) {
+                        paletteIndex = encoding.states.size();
+                        localIndex.put(blockData, paletteIndex);
+                        encoding.states.add(blockData.getAsString());
+                        encoding.materials.add(blockData.getMaterial());
+                    }
+                    encoding.indices.set(index++, paletteIndex);
+                }
+            }
+        }
+        return encoding;
+    }
+
+    private ZStructureData merge(List<ChunkEncoding> chunks, Region region, String name, ZStructureMetricsListener metrics) {
+        long start = ZStructureMetrics.start(metrics);
+        ZStructurePalette palette = new ZStructurePalette();
+        List<int[]> remaps = new ArrayList<>(chunks.size());
+        for (ChunkEncoding chunk : chunks) {
+            int[] remap = new int[chunk.states.size()];
+            for (int i = 0; i < remap.length; i++) {
+                remap[i] = palette.getOrAdd(chunk.states.get(i), chunk.materials.get(i)) + 1;
+            }
+            remaps.add(remap);
+        }
+
+        int width = region.width();
+        int height = region.height();
+        int length = region.length();
+        ZStructureBlockStorage storage = new ZStructureBlockStorage(region.cellCount(), 32 - Integer.numberOfLeadingZeros(palette.size()));
+        for (int c = 0; c < chunks.size(); c++) {
+            ChunkEncoding chunk = chunks.get(c);
+            int[] remap = remaps.get(c);
+            int index = 0;
+            for (int x = chunk.minX; x <= chunk.maxX; x++) {
+                for (int y = 0; y < height; y++) {
+                    int base = ((x - region.minX) * height + y) * length - region.minZ;
+                    for (int z = chunk.minZ; z <= chunk.maxZ; z++) {
+                        storage.set(base + z, remap[chunk.indices.get(index++)]);
+                    }
+                }
+            }
+        }
+        ZStructureData data = new ZStructureData(name, width, height, length, palette, storage);
+        ZStructureMetrics.record(metrics, ZStructureStage.CAPTURE_MERGE, start, 0, 0, data.getBlockCount());
+        return data;
+    }
+
+    private static class ChunkEncoding {
+        int minX, maxX, minZ, maxZ;
+        ZStructureBlockStorage indices;
+        final List<String> states = new ArrayList<>();
+        final List<Material> materials = new ArrayList<>();
+    }
+
+    private record Region(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        static Region of(Location corner1, Location corner2) {
+            return new Region(
+                    Math.min(corner1.getBlockX(), corner2.getBlockX()),
+                    Math.min(corner1.getBlockY(), corner2.getBlockY()),
+                    Math.min(corner1.getBlockZ(), corner2.getBlockZ()),
+                    Math.max(corner1.getBlockX(), corner2.getBlockX()),
+                    Math.max(corner1.getBlockY(), corner2.getBlockY()),
+                    Math.max(corner1.getBlockZ(), corner2.getBlockZ())
+            );
+        }
+
+        int width() {
+            return maxX - minX + 1;
+        }
+
+        int height() {
+            return maxY - minY + 1;
+        }
+
+        int length() {
+            return maxZ - minZ + 1;
+        }
+
+        long volume() {
+            return (long) width() * height() * length();
+        }
+
+        int cellCount() {
+            try {
+                return Math.multiplyExact(Math.multiplyExact(width(), height()), length());
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Capture region too large: " + width() + "x" + height() + "x" + length(), e);
+            }
+        }
+    }
+}
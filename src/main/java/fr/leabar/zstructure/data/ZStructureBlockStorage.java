@@ -0,0 +1,82 @@
+package fr.leabar.zstructure.data;
+
+public class ZStructureBlockStorage {
+    private final int size;
+    private int bitsPerEntry;
+    private int entriesPerLong;
+    private long mask;
+    private long[] data;
+
+    public ZStructureBlockStorage(int size) {
+        this(size, 1);
+    }
+
+    public ZStructureBlockStorage(int size, int bitsPerEntry) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Storage size invalid: " + size);
+        }
+        this.size = size;
+        setBits(Math.max(1, Math.min(32, bitsPerEntry)));
+        this.data = new long[(size + entriesPerLong - 1) / entriesPerLong];
+    }
+
+    private ZStructureBlockStorage(ZStructureBlockStorage other) {
+        this.size = other.size;
+        this.bitsPerEntry = other.bitsPerEntry;
+        this.entriesPerLong = other.entriesPerLong;
+        this.mask = other.mask;
+        this.data = other.data.clone();
+    }
+
+    private void setBits(int bits) {
+        this.bitsPerEntry = bits;
+        this.entriesPerLong = 64 / bits;
+        this.mask = (1L << bits) - 1;
+    }
+
+    public int get(int index) {
+        int cell = index / entriesPerLong;
+        int shift = (index - cell * entriesPerLong) * bitsPerEntry;
+        return (int) ((data[cell] >>> shift) & mask);
+    }
+
+    public void set(int index, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Storage value invalid: " + value);
+        }
+        if ((value & ~mask) != 0) {
+            resize(32 - Integer.numberOfLeadingZeros(value));
+        }
+        int cell = index / entriesPerLong;
+        int shift = (index - cell * entriesPerLong) * bitsPerEntry;
+        data[cell] = (data[cell] & ~(mask << shift)) | ((long) value << shift);
+    }
+
+    private void resize(int newBits) {
+        ZStructureBlockStorage resized = new ZStructureBlockStorage(size, newBits);
+        for (int i = 0; i < size; i++) {
+            int value = get(i);
+            if (value != 0) {
+                resized.set(i, value);
+            }
+        }
+        setBits(resized.bitsPerEntry);
+        this.data = resized.data;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getBitsPerEntry() {
+        return bitsPerEntry;
+    }
+
+    public long getMemoryUsage() {
+        return (long) data.length * Long.BYTES;
+    }
+
+    public ZStructureBlockStorage copy() {
+        return new ZStructureBlockStorage(this);
+    }
+}
@@ -1,97 +1,388 @@
 package fr.leabar.zstructure.data;
 
 import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.structure.Mirror;
+import org.bukkit.block.structure.StructureRotation;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.function.Consumer;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 
 public class ZStructureData {
+    private static final int EMPTY = 0;
+
     private final int width;
     private final int height;
     private final int length;
-    private final List<ZStructureBlock> blocks;
+    private final ZStructureBlockStorage storage;
+    private final ZStructureTransform transform;
+    private final ZStructureData paletteSource;
+    private final StructureRotation rotation;
+    private final Mirror mirror;
+    private volatile ZStructurePalette palette;
+    private final int blockCount;
     private final String name;
     private final long creationTime;
-    private Map<String, ZStructureBlock> positionCache;
-    private Map<Integer, List<ZStructureBlock>> layerCache;
-    private boolean cacheBuilt = false;
-    private final Object cacheLock = new Object();
+    private volatile int[] paletteCounts;
+    private volatile ZStructureSpatialIndex spatialIndex;
 
     public ZStructureData(String name, int width, int height, int length, List<ZStructureBlock> blocks) {
         this.name = name;
         this.width = width;
         this.height = height;
         this.length = length;
-        this.blocks = List.copyOf(blocks);
+        this.palette = new ZStructurePalette();
+        this.storage = new ZStructureBlockStorage(checkedVolume(width, height, length));
+        this.transform = null;
+        this.paletteSource = null;
+        this.rotation = StructureRotation.NONE;
+        this.mirror = Mirror.NONE;
+        int count = 0;
+        for (ZStructureBlock block : blocks) {
+            if (block.x() < 0 || block.x() >= width || block.y() < 0 || block.y() >= height || block.z() < 0 || block.z() >= length) {
+                throw new IllegalArgumentException("Block outside of the structure bounds: " + block);
+            }
+            int index = indexOf(block.x(), block.y(), block.z());
+            if (storage.get(index) == EMPTY) {
+                count++;
+            }
+            storage.set(index, palette.getOrAdd(block.blockDataString(), block.material()) + 1);
+        }
+        palette.freeze();
+        this.blockCount = count;
+        this.creationTime = System.currentTimeMillis();
+    }
+
+    public ZStructureData(String name, int width, int height, int length, ZStructurePalette palette, ZStructureBlockStorage storage) {
+        if (storage.size() != checkedVolume(width, height, length)) {
+            throw new IllegalArgumentException("Storage size does not match the structure volume: " + storage.size());
+        }
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        palette.freeze();
+        this.palette = palette;
+        this.storage = storage;
+        this.transform = null;
+        this.paletteSource = null;
+        this.rotation = StructureRotation.NONE;
+        this.mirror = Mirror.NONE;
+        int count = 0;
+        for (int i = 0; i < storage.size(); i++) {
+            if (storage.get(i) != EMPTY) {
+                count++;
+            }
+        }
+        this.blockCount = count;
         this.creationTime = System.currentTimeMillis();
     }
 
-    private void buildCache() {
-        if (cacheBuilt) return;
+    private ZStructureData(String name, ZStructureData source) {
+        this.name = name;
+        this.width = source.width;
+        this.height = source.height;
+        this.length = source.length;
+        this.palette = source.palette;
+        this.storage = source.storage;
+        this.transform = source.transform;
+        this.paletteSource = source.paletteSource;
+        this.rotation = source.rotation;
+        this.mirror = source.mirror;
+        this.blockCount = source.blockCount;
+        this.paletteCounts = source.paletteCounts;
+        this.spatialIndex = source.spatialIndex;
+        this.creationTime = System.currentTimeMillis();
+    }
+
+    private ZStructureData(ZStructureData parent, int width, int height, int length, ZStructureTransform local, StructureRotation rotation, Mirror mirror, int blockCount) {
+        this.name = parent.name;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.storage = parent.storage;
+        this.transform = (parent.transform != null ? parent.transform : ZStructureTransform.identity(parent.width, parent.height, parent.length)).then(local, width, height, length);
+        this.rotation = rotation;
+        this.mirror = mirror;
+        this.blockCount = blockCount;
+        this.creationTime = parent.creationTime;
+        if (rotation == StructureRotation.NONE && mirror == Mirror.NONE) {
+            this.palette = parent.palette;
+            this.paletteSource = parent.palette == null ? parent : null;
+            this.paletteCounts = blockCount == parent.blockCount ? parent.paletteCounts : null;
+        } else {
+            this.paletteSource = parent;
+            this.paletteCounts = parent.paletteCounts;
+        }
+    }
+
+    public ZStructureData rotate(StructureRotation rotation) {
+        if (rotation == StructureRotation.NONE) {
+            return this;
+        }
+        boolean quarter = rotation != StructureRotation.CLOCKWISE_180;
+        return new ZStructureData(this, quarter ? length : width, height, quarter ? width : length,
+                ZStructureTransform.rotation(rotation, width, length), rotation, Mirror.NONE, blockCount);
+    }
+
+    public ZStructureData mirror(Mirror mirror) {
+        if (mirror == Mirror.NONE) {
+            return this;
+        }
+        return new ZStructureData(this, width, height, length, ZStructureTransform.mirror(mirror, width, length), StructureRotation.NONE, mirror, blockCount);
+    }
+
+    public ZStructureData translate(int offsetX, int offsetY, int offsetZ) {
+        if (offsetX == 0 && offsetY == 0 && offsetZ == 0) {
+            return this;
+        }
+        long newWidth = (long) width + offsetX, newHeight = (long) height + offsetY, newLength = (long) length + offsetZ;
+        if (newWidth > Integer.MAX_VALUE || newHeight > Integer.MAX_VALUE || newLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Translated structure too large");
+        }
+        if (newWidth <= 0 || newHeight <= 0 || newLength <= 0) {
+            throw new IllegalArgumentException("Translation moves the whole structure out of bounds: " + offsetX + "," + offsetY + "," + offsetZ);
+        }
+        checkedVolume((int) newWidth, (int) newHeight, (int) newLength);
+        int kept = offsetX >= 0 && offsetY >= 0 && offsetZ >= 0 ? blockCount
+                : countBlocks(Math.max(0, -offsetX), Math.max(0, -offsetY), Math.max(0, -offsetZ), width - 1, height - 1, length - 1);
+        return new ZStructureData(this, (int) newWidth, (int) newHeight, (int) newLength, ZStructureTransform.offset(-offsetX, -offsetY, -offsetZ),
+                StructureRotation.NONE, Mirror.NONE, kept);
+    }
+
+    public ZStructureData subRegion(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int fromX = Math.max(0, minX), toX = Math.min(width - 1, maxX);
+        int fromY = Math.max(0, minY), toY = Math.min(height - 1, maxY);
+        int fromZ = Math.max(0, minZ), toZ = Math.min(length - 1, maxZ);
+        if (fromX > toX || fromY > toY || fromZ > toZ) {
+            throw new IllegalArgumentException("Region does not intersect the structure");
+        }
+        return new ZStructureData(this, toX - fromX + 1, toY - fromY + 1, toZ - fromZ + 1, ZStructureTransform.offset(fromX, fromY, fromZ),
+                StructureRotation.NONE, Mirror.NONE, countBlocks(fromX, fromY, fromZ, toX, toY, toZ));
+    }
+
+    private int countBlocks(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int[] count = new int[1];
+        forEachBlockIndexInRegion(minX, minY, minZ, maxX, maxY, maxZ, (x, y, z, paletteIndex) -> count[0]++);
+        return count[0];
+    }
+
+    public boolean isView() {
+        return transform != null;
+    }
+
+    private static int checkedVolume(int width, int height, int length) {
+        if (width < 0 || height < 0 || length < 0) {
+            throw new IllegalArgumentException("Structure dimensions invalid: " + width + "x" + height + "x" + length);
+        }
+        long volume = (long) width * height * length;
+        if (volume > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Structure too large: " + width + "x" + height + "x" + length);
+        }
+        return (int) volume;
+    }
+
+    private int indexOf(int x, int y, int z) {
+        return transform == null ? (x * height + y) * length + z : transform.indexOf(x, y, z);
+    }
+
+    int storageValue(int x, int y, int z) {
+        int index = indexOf(x, y, z);
+        return index < 0 ? EMPTY : storage.get(index);
+    }
+
+    int cellValue(int cell) {
+        if (transform == null) {
+            return storage.get(cell);
+        }
+        return storageValue(cell / (height * length), (cell / length) % height, cell % length);
+    }
 
-        synchronized (cacheLock) {
-            if (cacheBuilt) return;
-            positionCache = new HashMap<>(blocks.size());
-            layerCache = new HashMap<>();
-            for (ZStructureBlock block : blocks) {
-                String key = block.x() + "," + block.y() + "," + block.z();
-                positionCache.put(key, block);
-                layerCache.computeIfAbsent(block.y(), k -> new ArrayList<>()).add(block);
+    ZStructureBlockStorage copyStorage() {
+        if (transform == null) {
+            return storage.copy();
+        }
+        ZStructureBlockStorage copy = new ZStructureBlockStorage(getVolume(), storage.getBitsPerEntry());
+        int cell = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    copy.set(cell++, storageValue(x, y, z));
+                }
             }
-            cacheBuilt = true;
         }
+        return copy;
+    }
+
+    private ZStructureBlock createBlock(int x, int y, int z, int paletteIndex) {
+        ZStructurePalette palette = getPalette();
+        return new ZStructureBlock(x, y, z, palette.getMaterial(paletteIndex), palette.getState(paletteIndex));
     }
 
 
     public void forEachBlock(Consumer<ZStructureBlock> consumer) {
-        blocks.forEach(consumer);
+        forEachBlockIndex((x, y, z, paletteIndex) -> consumer.accept(createBlock(x, y, z, paletteIndex)));
+    }
+
+    public void forEachBlockIndex(BlockIndexConsumer consumer) {
+        int index = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    int value = transform == null ? storage.get(index++) : storageValue(x, y, z);
+                    if (value != EMPTY) {
+                        consumer.accept(x, y, z, value - 1);
+                    }
+                }
+            }
+        }
     }
 
     public CompletableFuture<Void> forEachBlockAsync(Consumer<ZStructureBlock> consumer) {
-        return CompletableFuture.runAsync(() -> blocks.parallelStream().forEach(consumer));
+        return CompletableFuture.runAsync(() -> IntStream.range(0, width).parallel().forEach(x -> {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    int value = storageValue(x, y, z);
+                    if (value != EMPTY) {
+                        consumer.accept(createBlock(x, y, z, value - 1));
+                    }
+                }
+            }
+        }));
     }
 
 
     public void forEachBlockFiltered(Predicate<ZStructureBlock> filter, Consumer<ZStructureBlock> consumer) {
-        blocks.stream().filter(filter).forEach(consumer);
+        forEachBlock(block -> {
+            if (filter.test(block)) {
+                consumer.accept(block);
+            }
+        });
+    }
+
+    public int getPaletteIndexAt(int x, int y, int z) {
+        if (!isValidPosition(x, y, z)) {
+            return -1;
+        }
+        return storageValue(x, y, z) - 1;
     }
 
     public ZStructureBlock getBlockAt(int x, int y, int z) {
-        buildCache();
-        String key = x + "," + y + "," + z;
-        return positionCache.get(key);
+        int paletteIndex = getPaletteIndexAt(x, y, z);
+        return paletteIndex < 0 ? null : createBlock(x, y, z, paletteIndex);
+    }
+
+    public boolean hasBlockAt(int x, int y, int z) {
+        return getPaletteIndexAt(x, y, z) >= 0;
+    }
+
+    public Material getMaterialAt(int x, int y, int z) {
+        int paletteIndex = getPaletteIndexAt(x, y, z);
+        return paletteIndex < 0 ? null : getPalette().getMaterial(paletteIndex);
+    }
+
+    public String getStateAt(int x, int y, int z) {
+        int paletteIndex = getPaletteIndexAt(x, y, z);
+        return paletteIndex < 0 ? null : getPalette().getState(paletteIndex);
+    }
+
+    public BlockData getBlockDataAt(int x, int y, int z) {
+        int paletteIndex = getPaletteIndexAt(x, y, z);
+        return paletteIndex < 0 ? null : getPalette().getSharedBlockData(paletteIndex).clone();
     }
 
 
     public List<ZStructureBlock> getBlocksAtLayer(int y) {
-        buildCache();
-        return layerCache.getOrDefault(y, List.of());
+        List<ZStructureBlock> layer = new ArrayList<>();
+        forEachBlockInLayer(y, layer::add);
+        return layer;
     }
 
     public void forEachBlockInLayer(int y, Consumer<ZStructureBlock> consumer) {
-        getBlocksAtLayer(y).forEach(consumer);
+        forEachBlockInRegion(0, y, 0, width - 1, y, length - 1, consumer);
     }
 
 
     public void forEachBlockInRegion(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Consumer<ZStructureBlock> consumer) {
-        blocks.stream()
-                .filter(block -> block.x() >= minX && block.x() <= maxX &&
-                        block.y() >= minY && block.y() <= maxY &&
-                        block.z() >= minZ && block.z() <= maxZ)
-                .forEach(consumer);
+        forEachBlockIndexInRegion(minX, minY, minZ, maxX, maxY, maxZ, (x, y, z, paletteIndex) -> consumer.accept(createBlock(x, y, z, paletteIndex)));
+    }
+
+    public void forEachBlockIndexInRegion(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockIndexConsumer consumer) {
+        scanSections(
+                Math.max(0, minX), Math.max(0, minY), Math.max(0, minZ),
+                Math.min(width - 1, maxX), Math.min(height - 1, maxY), Math.min(length - 1, maxZ),
+                getSpatialIndex().getOccupiedSections(), null, consumer
+        );
     }
 
 
     public List<ZStructureBlock> findBlocksByMaterial(Material material) {
-        return blocks.stream()
-                .filter(block -> block.material() == material)
-                .toList();
+        List<ZStructureBlock> result = new ArrayList<>();
+        forEachBlockIndexOfMaterial(material, (x, y, z, paletteIndex) -> result.add(createBlock(x, y, z, paletteIndex)));
+        return result;
+    }
+
+    public void forEachBlockIndexOfMaterial(Material material, BlockIndexConsumer consumer) {
+        ZStructurePalette palette = getPalette();
+        boolean[] matches = new boolean[palette.size()];
+        boolean any = false;
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = palette.getMaterial(i) == material;
+            any |= matches[i];
+        }
+        if (!any) {
+            return;
+        }
+        scanSections(0, 0, 0, width - 1, height - 1, length - 1, getSpatialIndex().getSections(matches), matches, consumer);
+    }
+
+    private void scanSections(int fromX, int fromY, int fromZ, int toX, int toY, int toZ, BitSet sections, boolean[] matches, BlockIndexConsumer consumer) {
+        if (fromX > toX || fromY > toY || fromZ > toZ || sections.isEmpty()) {
+            return;
+        }
+        ZStructureSpatialIndex index = getSpatialIndex();
+        int shift = ZStructureSpatialIndex.SECTION_SHIFT;
+        int fromSectionZ = fromZ >> shift, toSectionZ = toZ >> shift;
+        for (int x = fromX; x <= toX; x++) {
+            for (int sy = fromY >> shift; sy <= toY >> shift; sy++) {
+                int rowSection = index.sectionAt(x >> shift, sy, 0);
+                int first = sections.nextSetBit(rowSection + fromSectionZ);
+                if (first < 0 || first > rowSection + toSectionZ) {
+                    continue;
+                }
+                int yEnd = Math.min(toY, ((sy + 1) << shift) - 1);
+                for (int y = Math.max(fromY, sy << shift); y <= yEnd; y++) {
+                    int base = (x * height + y) * length;
+                    for (int sz = first - rowSection; sz <= toSectionZ; sz++) {
+                        if (!sections.get(rowSection + sz)) {
+                            continue;
+                        }
+                        int zEnd = Math.min(toZ, ((sz + 1) << shift) - 1);
+                        for (int z = Math.max(fromZ, sz << shift); z <= zEnd; z++) {
+                            int value = transform == null ? storage.get(base + z) : storageValue(x, y, z);
+                            if (value != EMPTY && (matches == null || matches[value - 1])) {
+                                consumer.accept(x, y, z, value - 1);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private ZStructureSpatialIndex getSpatialIndex() {
+        ZStructureSpatialIndex index = spatialIndex;
+        if (index == null) {
+            spatialIndex = index = ZStructureSpatialIndex.build(this);
+        }
+        return index;
     }
 
     public boolean isValidPosition(int x, int y, int z) {
@@ -112,7 +403,7 @@ public class ZStructureData {
     }
 
     public ZStructureData clone(String newName) {
-        return new ZStructureData(newName, width, height, length, blocks);
+        return new ZStructureData(newName, this);
     }
 
     public String getName() {
@@ -131,19 +422,77 @@ public class ZStructureData {
         return length;
     }
 
+    int paletteSize() {
+        ZStructurePalette result = palette;
+        return result != null ? result.size() : paletteSource.paletteSize();
+    }
+
+    public ZStructurePalette getPalette() {
+        ZStructurePalette result = palette;
+        if (result == null) {
+            synchronized (this) {
+                result = palette;
+                if (result == null) {
+                    ZStructurePalette source = paletteSource.getPalette();
+                    result = rotation == StructureRotation.NONE && mirror == Mirror.NONE ? source : source.transform(rotation, mirror);
+                    palette = result;
+                }
+            }
+        }
+        return result;
+    }
+
     public List<ZStructureBlock> getBlocks() {
-        return blocks;
+        List<ZStructureBlock> blocks = new ArrayList<>(blockCount);
+        forEachBlock(blocks::add);
+        return Collections.unmodifiableList(blocks);
     }
     public long getCreationTime() {
         return creationTime;
     }
 
     public int getBlockCount() {
-        return blocks.size();
+        return blockCount;
+    }
+
+    public int[] getPaletteCounts() {
+        int[] counts = paletteCounts;
+        if (counts == null) {
+            int[] computed = new int[paletteSize()];
+            if (transform == null) {
+                for (int i = 0; i < storage.size(); i++) {
+                    int value = storage.get(i);
+                    if (value != EMPTY) {
+                        computed[value - 1]++;
+                    }
+                }
+            } else {
+                forEachBlockIndex((x, y, z, paletteIndex) -> computed[paletteIndex]++);
+            }
+            paletteCounts = counts = computed;
+        }
+        return counts.clone();
     }
 
 
+    public long getMemoryUsage() {
+        return (transform == null ? storage.getMemoryUsage() : 0) + getPalette().getMemoryUsage() + 128;
+    }
+
     public long getNonAirBlockCount() {
-        return blocks.stream().filter(block -> !block.isAir()).count();
+        int[] counts = getPaletteCounts();
+        ZStructurePalette palette = getPalette();
+        long nonAir = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (!palette.isAir(i)) {
+                nonAir += counts[i];
+            }
+        }
+        return nonAir;
+    }
+
+    @FunctionalInterface
+    public interface BlockIndexConsumer {
+        void accept(int x, int y, int z, int paletteIndex);
     }
 }
@@ -0,0 +1,161 @@
+package fr.leabar.zstructure.data;
+
+import java.util.Arrays;
+
+public class ZStructureDelta {
+    private final String name;
+    private final int width;
+    private final int height;
+    private final int length;
+    private final ZStructurePalette palette;
+    private final int[] cells;
+    private final int[] values;
+    private final long creationTime;
+
+    public ZStructureDelta(String name, int width, int height, int length, ZStructurePalette palette, int[] cells, int[] values) {
+        if (cells.length != values.length) {
+            throw new IllegalArgumentException("Delta cells and values differ in size: " + cells.length + " != " + values.length);
+        }
+        long volume = (long) width * height * length;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] < 0 || cells[i] >= volume || (i > 0 && cells[i] <= cells[i - 1])) {
+                throw new IllegalArgumentException("Delta cell invalid: " + cells[i]);
+            }
+            if (values[i] < 0 || values[i] > palette.size()) {
+                throw new IllegalArgumentException("Palette index invalid: " + (values[i] - 1));
+            }
+        }
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        palette.freeze();
+        this.palette = palette;
+        this.cells = cells;
+        this.values = values;
+        this.creationTime = System.currentTimeMillis();
+    }
+
+    public static ZStructureDelta between(ZStructureData base, ZStructureData target) {
+        checkDimensions(base, target.getWidth(), target.getHeight(), target.getLength());
+        ZStructurePalette targetPalette = target.getPalette();
+        ZStructurePalette basePalette = base.getPalette();
+        int[] targetToBase = new int[targetPalette.size() + 1];
+        for (int i = 0; i < targetPalette.size(); i++) {
+            int index = basePalette.indexOf(targetPalette.getState(i));
+            targetToBase[i + 1] = index < 0 ? -1 : index + 1;
+        }
+        int[] baseCanonical = new int[basePalette.size() + 1];
+        for (int i = 0; i < basePalette.size(); i++) {
+            baseCanonical[i + 1] = basePalette.indexOf(basePalette.getState(i)) + 1;
+        }
+
+        ZStructurePalette palette = new ZStructurePalette();
+        int[] deltaIndex = new int[targetPalette.size() + 1];
+        int[] cells = new int[16];
+        int[] values = new int[16];
+        int count = 0;
+        int volume = target.getVolume();
+        for (int cell = 0; cell < volume; cell++) {
+            int targetValue = target.cellValue(cell);
+            int baseValue = base.cellValue(cell);
+            if (targetValue == 0 ? baseValue == 0 : targetToBase[targetValue] == baseCanonical[baseValue]) {
+                continue;
+            }
+            if (count == cells.length) {
+                cells = Arrays.copyOf(cells, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            if (targetValue != 0 && deltaIndex[targetValue] == 0) {
+                deltaIndex[targetValue] = palette.getOrAdd(targetPalette.getState(targetValue - 1), targetPalette.getMaterial(targetValue - 1)) + 1;
+            }
+            cells[count] = cell;
+            values[count] = targetValue == 0 ? 0 : deltaIndex[targetValue];
+            count++;
+        }
+        return new ZStructureDelta(target.getName(), target.getWidth(), target.getHeight(), target.getLength(), palette,
+                Arrays.copyOf(cells, count), Arrays.copyOf(values, count));
+    }
+
+    public ZStructureData applyTo(ZStructureData base) {
+        checkDimensions(base, width, height, length);
+        ZStructurePalette basePalette = base.getPalette();
+        ZStructurePalette merged = new ZStructurePalette(basePalette.size() + palette.size());
+        for (int i = 0; i < basePalette.size(); i++) {
+            merged.add(basePalette.getState(i), basePalette.getMaterial(i));
+        }
+        int[] remap = new int[palette.size() + 1];
+        for (int i = 0; i < palette.size(); i++) {
+            remap[i + 1] = merged.getOrAdd(palette.getState(i), palette.getMaterial(i)) + 1;
+        }
+
+        ZStructureBlockStorage storage = base.copyStorage();
+        for (int i = 0; i < cells.length; i++) {
+            storage.set(cells[i], remap[values[i]]);
+        }
+        return new ZStructureData(name, width, height, length, merged, storage);
+    }
+
+    private static void checkDimensions(ZStructureData base, int width, int height, int length) {
+        if (base.getWidth() != width || base.getHeight() != height || base.getLength() != length) {
+            throw new IllegalArgumentException("Structure dimensions differ: " + base.getWidth() + "x" + base.getHeight() + "x" + base.getLength()
+                    + " != " + width + "x" + height + "x" + length);
+        }
+    }
+
+    public void forEachChange(ZStructureData.BlockIndexConsumer consumer) {
+        for (int i = 0; i < cells.length; i++) {
+            int cell = cells[i];
+            consumer.accept(cell / (height * length), (cell / length) % height, cell % length, values[i] - 1);
+        }
+    }
+
+    public int getCell(int change) {
+        return cells[change];
+    }
+
+    public int getValue(int change) {
+        return values[change];
+    }
+
+    public int getChangeCount() {
+        return cells.length;
+    }
+
+    public boolean isEmpty() {
+        return cells.length == 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public ZStructurePalette getPalette() {
+        return palette;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public long getMemoryUsage() {
+        return (long) cells.length * Integer.BYTES * 2 + palette.getMemoryUsage() + 64;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZStructureDelta '%s' [%dx%dx%d, %d changes]", name, width, height, length, cells.length);
+    }
+}
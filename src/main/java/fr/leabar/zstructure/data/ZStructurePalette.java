@@ -0,0 +1,152 @@
+package fr.leabar.zstructure.data;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.structure.Mirror;
+import org.bukkit.block.structure.StructureRotation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class ZStructurePalette {
+    private final List<String> states;
+    private final List<Material> materials;
+    private final Map<String, Integer> stateToIndex;
+    private volatile AtomicReferenceArray<BlockData> blockDataCache = new AtomicReferenceArray<>(0);
+    private volatile boolean frozen;
+
+    public ZStructurePalette() {
+        this(16);
+    }
+
+    public ZStructurePalette(int expectedSize) {
+        this.states = new ArrayList<>(expectedSize);
+        this.materials = new ArrayList<>(expectedSize);
+        this.stateToIndex = new HashMap<>(Math.max(16, expectedSize * 2));
+    }
+
+    public int getOrAdd(String state, Material material) {
+        Integer index = stateToIndex.get(state);
+        if (index != null) {
+            return index;
+        }
+        if (frozen) {
+            throw new IllegalStateException("Palette is shared by a structure and cannot be modified: " + state);
+        }
+        int newIndex = states.size();
+        states.add(state);
+        materials.add(material);
+        stateToIndex.put(state, newIndex);
+        return newIndex;
+    }
+
+    public int add(String state, Material material) {
+        if (frozen) {
+            throw new IllegalStateException("Palette is shared by a structure and cannot be modified: " + state);
+        }
+        int newIndex = states.size();
+        states.add(state);
+        materials.add(material);
+        stateToIndex.putIfAbsent(state, newIndex);
+        return newIndex;
+    }
+
+    public int getOrAdd(String state) {
+        Integer index = stateToIndex.get(state);
+        if (index != null) {
+            return index;
+        }
+        return getOrAdd(state, materialOf(state));
+    }
+
+    void freeze() {
+        frozen = true;
+    }
+
+    public int indexOf(String state) {
+        return stateToIndex.getOrDefault(state, -1);
+    }
+
+    public String getState(int index) {
+        return states.get(index);
+    }
+
+    public Material getMaterial(int index) {
+        return materials.get(index);
+    }
+
+    public BlockData getSharedBlockData(int index) {
+        AtomicReferenceArray<BlockData> cache = blockDataCache;
+        if (index >= cache.length()) {
+            cache = growBlockDataCache();
+        }
+        BlockData blockData = cache.get(index);
+        if (blockData == null) {
+            blockData = Bukkit.createBlockData(states.get(index));
+            if (!cache.compareAndSet(index, null, blockData)) {
+                blockData = cache.get(index);
+            }
+        }
+        return blockData;
+    }
+
+    private synchronized AtomicReferenceArray<BlockData> growBlockDataCache() {
+        AtomicReferenceArray<BlockData> current = blockDataCache;
+        if (current.length() >= states.size()) {
+            return current;
+        }
+        AtomicReferenceArray<BlockData> grown = new AtomicReferenceArray<>(states.size());
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        blockDataCache = grown;
+        return grown;
+    }
+
+    public ZStructurePalette transform(StructureRotation rotation, Mirror mirror) {
+        ZStructurePalette result = new ZStructurePalette(states.size());
+        for (int i = 0; i < states.size(); i++) {
+            BlockData blockData = getSharedBlockData(i).clone();
+            blockData.mirror(mirror);
+            blockData.rotate(rotation);
+            result.add(blockData.getAsString(), materials.get(i));
+        }
+        result.freeze();
+        return result;
+    }
+
+    public boolean isAir(int index) {
+        Material material = materials.get(index);
+        return material == Material.AIR || material == Material.VOID_AIR || material == Material.CAVE_AIR;
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    public long getMemoryUsage() {
+        long usage = 64L * states.size();
+        for (String state : states) {
+            usage += 40 + state.length();
+        }
+        return usage;
+    }
+
+    public List<String> getStates() {
+        return List.copyOf(states);
+    }
+
+    public static Material materialOf(String state) {
+        int end = state.indexOf('[');
+        String key = end < 0 ? state : state.substring(0, end);
+        Material material = Material.matchMaterial(key);
+        if (material == null) {
+            throw new IllegalArgumentException("Unknown material in block state: " + state);
+        }
+        return material;
+    }
+}
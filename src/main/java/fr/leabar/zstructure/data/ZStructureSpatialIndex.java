@@ -0,0 +1,63 @@
+package fr.leabar.zstructure.data;
+
+import java.util.BitSet;
+
+final class ZStructureSpatialIndex {
+    static final int SECTION_SHIFT = 4;
+
+    private final int sectionsY, sectionsZ;
+    private final BitSet occupied;
+    private final BitSet[] paletteSections;
+
+    private ZStructureSpatialIndex(int sectionsX, int sectionsY, int sectionsZ, int paletteSize) {
+        this.sectionsY = sectionsY;
+        this.sectionsZ = sectionsZ;
+        this.occupied = new BitSet(sectionsX * sectionsY * sectionsZ);
+        this.paletteSections = new BitSet[paletteSize];
+    }
+
+    static ZStructureSpatialIndex build(ZStructureData data) {
+        int width = data.getWidth(), height = data.getHeight(), length = data.getLength();
+        ZStructureSpatialIndex index = new ZStructureSpatialIndex(sectionsFor(width), sectionsFor(height), sectionsFor(length), data.paletteSize());
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int rowSection = index.sectionAt(x >> SECTION_SHIFT, y >> SECTION_SHIFT, 0);
+                for (int z = 0; z < length; z++) {
+                    int value = data.storageValue(x, y, z);
+                    if (value != 0) {
+                        int section = rowSection + (z >> SECTION_SHIFT);
+                        index.occupied.set(section);
+                        BitSet sections = index.paletteSections[value - 1];
+                        if (sections == null) {
+                            sections = index.paletteSections[value - 1] = new BitSet();
+                        }
+                        sections.set(section);
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    private static int sectionsFor(int size) {
+        return (size + (1 << SECTION_SHIFT) - 1) >> SECTION_SHIFT;
+    }
+
+    int sectionAt(int sectionX, int sectionY, int sectionZ) {
+        return (sectionX * sectionsY + sectionY) * sectionsZ + sectionZ;
+    }
+
+    BitSet getOccupiedSections() {
+        return occupied;
+    }
+
+    BitSet getSections(boolean[] paletteEntries) {
+        BitSet result = new BitSet();
+        for (int i = 0; i < paletteEntries.length && i < paletteSections.length; i++) {
+            if (paletteEntries[i] && paletteSections[i] != null) {
+                result.or(paletteSections[i]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package fr.leabar.zstructure.data;
+
+import org.bukkit.block.structure.Mirror;
+import org.bukkit.block.structure.StructureRotation;
+
+final class ZStructureTransform {
+    private final int rootHeight, rootLength;
+    private final int xx, xz, zx, zz;
+    private final int offsetX, offsetY, offsetZ;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    private ZStructureTransform(int rootHeight, int rootLength, int xx, int xz, int zx, int zz, int offsetX, int offsetY, int offsetZ,
+                                int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.rootHeight = rootHeight;
+        this.rootLength = rootLength;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.xx = xx;
+        this.xz = xz;
+        this.zx = zx;
+        this.zz = zz;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.offsetZ = offsetZ;
+    }
+
+    static ZStructureTransform identity(int width, int height, int length) {
+        return new ZStructureTransform(height, length, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0, width - 1, height - 1, length - 1);
+    }
+
+    static ZStructureTransform rotation(StructureRotation rotation, int width, int length) {
+        return switch (rotation) {
+            case NONE -> local(1, 0, 0, 1, 0, 0, 0);
+            case CLOCKWISE_90 -> local(0, 1, -1, 0, 0, 0, length - 1);
+            case CLOCKWISE_180 -> local(-1, 0, 0, -1, width - 1, 0, length - 1);
+            case COUNTERCLOCKWISE_90 -> local(0, -1, 1, 0, width - 1, 0, 0);
+        };
+    }
+
+    static ZStructureTransform mirror(Mirror mirror, int width, int length) {
+        return switch (mirror) {
+            case NONE -> local(1, 0, 0, 1, 0, 0, 0);
+            case LEFT_RIGHT -> local(1, 0, 0, -1, 0, 0, length - 1);
+            case FRONT_BACK -> local(-1, 0, 0, 1, width - 1, 0, 0);
+        };
+    }
+
+    static ZStructureTransform offset(int offsetX, int offsetY, int offsetZ) {
+        return local(1, 0, 0, 1, offsetX, offsetY, offsetZ);
+    }
+
+    private static ZStructureTransform local(int xx, int xz, int zx, int zz, int offsetX, int offsetY, int offsetZ) {
+        return new ZStructureTransform(0, 0, xx, xz, zx, zz, offsetX, offsetY, offsetZ, 0, 0, 0, -1, -1, -1);
+    }
+
+    ZStructureTransform then(ZStructureTransform local, int width, int height, int length) {
+        int newXX = xx * local.xx + xz * local.zx, newXZ = xx * local.xz + xz * local.zz;
+        int newZX = zx * local.xx + zz * local.zx, newZZ = zx * local.xz + zz * local.zz;
+        int newOffsetX = offsetX + xx * local.offsetX + xz * local.offsetZ;
+        int newOffsetY = offsetY + local.offsetY;
+        int newOffsetZ = offsetZ + zx * local.offsetX + zz * local.offsetZ;
+        int cornerX = newOffsetX + newXX * (width - 1) + newXZ * (length - 1);
+        int cornerZ = newOffsetZ + newZX * (width - 1) + newZZ * (length - 1);
+        return new ZStructureTransform(rootHeight, rootLength, newXX, newXZ, newZX, newZZ, newOffsetX, newOffsetY, newOffsetZ,
+                Math.max(minX, Math.min(newOffsetX, cornerX)), Math.max(minY, newOffsetY), Math.max(minZ, Math.min(newOffsetZ, cornerZ)),
+                Math.min(maxX, Math.max(newOffsetX, cornerX)), Math.min(maxY, newOffsetY + height - 1), Math.min(maxZ, Math.max(newOffsetZ, cornerZ)));
+    }
+
+    int indexOf(int x, int y, int z) {
+        int sourceX = offsetX + xx * x + xz * z;
+        int sourceY = offsetY + y;
+        int sourceZ = offsetZ + zx * x + zz * z;
+        if (sourceX < minX || sourceX > maxX || sourceY < minY || sourceY > maxY || sourceZ < minZ || sourceZ > maxZ) {
+            return -1;
+        }
+        return (sourceX * rootHeight + sourceY) * rootLength + sourceZ;
+    }
+}
@@ -0,0 +1,65 @@
+package fr.leabar.zstructure.io;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ZStructureDictionary {
+    private final int id;
+    private final byte[] data;
+    private final Map<Integer, ZstdDictCompress> compressors = new ConcurrentHashMap<>();
+    private volatile ZstdDictDecompress decompressor;
+
+    public ZStructureDictionary(byte[] data) {
+        long id = Zstd.getDictIdFromDict(data);
+        if (id == 0) {
+            throw new IllegalArgumentException("Zstd dictionary invalid (no dictionary ID)");
+        }
+        this.id = (int) id;
+        this.data = data.clone();
+    }
+
+    public static ZStructureDictionary read(File file) throws IOException {
+        return new ZStructureDictionary(Files.readAllBytes(file.toPath()));
+    }
+
+    public void write(File file) throws IOException {
+        Files.write(file.toPath(), data);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public byte[] getData() {
+        return data.clone();
+    }
+
+    public int getSize() {
+        return data.length;
+    }
+
+    public ZstdDictCompress getCompressor(int level) {
+        return compressors.computeIfAbsent(level, l -> new ZstdDictCompress(data, l));
+    }
+
+    public ZstdDictDecompress getDecompressor() {
+        ZstdDictDecompress result = decompressor;
+        if (result == null) {
+            synchronized (this) {
+                result = decompressor;
+                if (result == null) {
+                    result = new ZstdDictDecompress(data);
+                    decompressor = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,37 @@
+package fr.leabar.zstructure.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ZStructureDictionaryRegistry {
+    private final Map<Integer, ZStructureDictionary> dictionaries = new ConcurrentHashMap<>();
+
+    public ZStructureDictionary register(ZStructureDictionary dictionary) {
+        ZStructureDictionary existing = dictionaries.putIfAbsent(dictionary.getId(), dictionary);
+        return existing != null ? existing : dictionary;
+    }
+
+    public ZStructureDictionary register(byte[] data) {
+        return register(new ZStructureDictionary(data));
+    }
+
+    public ZStructureDictionary register(File file) throws IOException {
+        return register(ZStructureDictionary.read(file));
+    }
+
+    public ZStructureDictionary get(int id) {
+        return dictionaries.get(id);
+    }
+
+    public boolean unregister(int id) {
+        return dictionaries.remove(id) != null;
+    }
+
+    public Collection<ZStructureDictionary> getDictionaries() {
+        return Collections.unmodifiableCollection(dictionaries.values());
+    }
+}
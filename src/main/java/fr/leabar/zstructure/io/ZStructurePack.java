@@ -0,0 +1,238 @@
+package fr.leabar.zstructure.io;
+
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.utils.ZStructureUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class ZStructurePack implements Closeable {
+    private static final int TOC_ENTRY_FIXED_SIZE = 49;
+
+    private final File file;
+    private final ZStructureReader reader;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries;
+    private volatile boolean closed;
+
+    private ZStructurePack(File file, ZStructureReader reader, FileChannel channel) throws IOException {
+        this.file = file;
+        this.reader = reader;
+        this.channel = channel;
+        this.entries = Collections.unmodifiableMap(readEntries(channel, this));
+    }
+
+    public static ZStructurePack open(File file, ZStructureReader reader) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ZStructurePack(file, reader, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static Map<String, Entry> readEntries(FileChannel channel, ZStructurePack pack) throws IOException {
+        ByteBuffer header = readBlock(channel, 0, ZStructureFormat.PACK_HEADER_SIZE);
+        if (ZStructureUtils.readInt(header) != ZStructureFormat.PACK_MAGIC_NUMBER) {
+            throw new IOException("ZPACK file invalid (magic number incorrect)");
+        }
+        byte version = header.get();
+        if (version < 1 || version > ZStructureFormat.PACK_VERSION) {
+            throw new IOException("ZPACK FILE VERSION INVALID : " + version);
+        }
+        header.position(header.position() + 3);
+        long tocOffset = ZStructureUtils.readLong(header);
+        int tocSize = ZStructureUtils.readInt(header);
+        int entryCount = ZStructureUtils.readInt(header);
+        if (tocOffset < ZStructureFormat.PACK_HEADER_SIZE || tocSize < 0 || tocOffset + tocSize > channel.size()) {
+            throw new IOException("ZPACK table of contents invalid");
+        }
+
+        ByteBuffer toc = readBlock(channel, tocOffset, tocSize);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            String name = ZStructureUtils.readString(toc);
+            long offset = ZStructureUtils.readLong(toc);
+            int size = ZStructureUtils.readInt(toc);
+            int width = ZStructureUtils.readInt(toc);
+            int height = ZStructureUtils.readInt(toc);
+            int length = ZStructureUtils.readInt(toc);
+            int blockCount = ZStructureUtils.readInt(toc);
+            long creationTime = ZStructureUtils.readLong(toc);
+            byte flags = toc.get();
+            int dictionaryId = ZStructureUtils.readInt(toc);
+            long rawSize = ZStructureUtils.readLong(toc);
+            if (offset < ZStructureFormat.PACK_HEADER_SIZE || size < 0 || offset + size > tocOffset) {
+                throw new IOException("ZPACK entry out of bounds: " + name);
+            }
+            entries.put(name, new Entry(pack, offset, size,
+                    new ZStructureReader.ZStructureMetadata(name, width, height, length, blockCount, creationTime, flags, size, dictionaryId, rawSize)));
+        }
+        return entries;
+    }
+
+    static int readTocSize(FileChannel channel) throws IOException {
+        return readBlock(channel, 0, ZStructureFormat.PACK_HEADER_SIZE).getInt(16);
+    }
+
+    static byte[] writeHeader(long tocOffset, int tocSize, int entryCount) {
+        ByteBuffer header = ByteBuffer.allocate(ZStructureFormat.PACK_HEADER_SIZE);
+        ZStructureUtils.writeInt(header, ZStructureFormat.PACK_MAGIC_NUMBER);
+        header.put(ZStructureFormat.PACK_VERSION);
+        header.put(new byte[3]);
+        ZStructureUtils.writeLong(header, tocOffset);
+        ZStructureUtils.writeInt(header, tocSize);
+        ZStructureUtils.writeInt(header, entryCount);
+        return header.array();
+    }
+
+    static byte[] writeEntries(Collection<Entry> entries) {
+        int size = 0;
+        for (Entry entry : entries) {
+            size += 2 + entry.encodedName.length + TOC_ENTRY_FIXED_SIZE;
+        }
+        ByteBuffer toc = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        for (Entry entry : entries) {
+            ZStructureReader.ZStructureMetadata metadata = entry.metadata;
+            toc.putShort((short) entry.encodedName.length);
+            toc.put(entry.encodedName);
+            ZStructureUtils.writeLong(toc, entry.offset);
+            ZStructureUtils.writeInt(toc, entry.size);
+            ZStructureUtils.writeInt(toc, metadata.getWidth());
+            ZStructureUtils.writeInt(toc, metadata.getHeight());
+            ZStructureUtils.writeInt(toc, metadata.getLength());
+            ZStructureUtils.writeInt(toc, metadata.getBlockCount());
+            ZStructureUtils.writeLong(toc, metadata.getCreationTime());
+            toc.put(metadata.getFlags());
+            ZStructureUtils.writeInt(toc, metadata.getDictionaryId());
+            ZStructureUtils.writeLong(toc, metadata.getRawSize());
+        }
+        return toc.array();
+    }
+
+    private static ByteBuffer readBlock(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("ZPACK file truncated");
+            }
+        }
+        return buffer.flip();
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public Set<String> getNames() {
+        return entries.keySet();
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public ZStructureData getStructure(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IOException("ZPACK entry not found: " + name);
+        }
+        return entry.getStructure();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Error closing pack", e);
+        }
+    }
+
+    public static class Entry {
+        private final ZStructurePack pack;
+        private final byte[] encodedName;
+        private final long offset;
+        private final int size;
+        private final ZStructureReader.ZStructureMetadata metadata;
+        private volatile ZStructureData structure;
+
+        Entry(ZStructurePack pack, long offset, int size, ZStructureReader.ZStructureMetadata metadata) {
+            this.pack = pack;
+            this.encodedName = metadata.getName().getBytes(StandardCharsets.UTF_8);
+            this.offset = offset;
+            this.size = size;
+            this.metadata = metadata;
+        }
+
+        public String getName() {
+            return metadata.getName();
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public ZStructureReader.ZStructureMetadata getMetadata() {
+            return metadata;
+        }
+
+        public boolean isLoaded() {
+            return structure != null;
+        }
+
+        public ZStructureData getStructure() throws IOException {
+            ZStructureData result = structure;
+            if (result == null) {
+                synchronized (this) {
+                    result = structure;
+                    if (result == null) {
+                        if (pack == null || pack.closed) {
+                            throw new IOException("ZPACK closed");
+                        }
+                        result = pack.reader.read(pack.channel.map(FileChannel.MapMode.READ_ONLY, offset, size));
+                        if (!result.getName().equals(getName())) {
+                            result = result.clone(getName());
+                        }
+                        structure = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        public void unload() {
+            structure = null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package fr.leabar.zstructure.io;
+
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.utils.ZStructureUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class ZStructurePackWriter implements Closeable {
+    private final File path;
+    private final ZStructureWriter writer;
+    private final ZStructureReader reader;
+    private RandomAccessFile file;
+    private Map<String, ZStructurePack.Entry> entries;
+    private long liveBytes;
+    private int tocSize;
+    private boolean dirty;
+
+    private ZStructurePackWriter(File file, ZStructureWriter writer, ZStructureReader reader) throws IOException {
+        this.path = file;
+        this.file = new RandomAccessFile(file, "rw");
+        this.writer = writer;
+        this.reader = reader;
+        try {
+            if (this.file.length() == 0) {
+                this.entries = new LinkedHashMap<>();
+                this.file.write(ZStructurePack.writeHeader(ZStructureFormat.PACK_HEADER_SIZE, 0, 0));
+                this.dirty = true;
+            } else {
+                this.entries = ZStructurePack.readEntries(this.file.getChannel(), null);
+                this.tocSize = ZStructurePack.readTocSize(this.file.getChannel());
+                for (ZStructurePack.Entry entry : entries.values()) {
+                    liveBytes += entry.getSize();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    public static ZStructurePackWriter open(File file, ZStructureWriter writer, ZStructureReader reader) throws IOException {
+        return new ZStructurePackWriter(file, writer, reader);
+    }
+
+    public synchronized ZStructureReader.ZStructureMetadata add(ZStructureData data) throws IOException {
+        return add(data.getName(), data);
+    }
+
+    public synchronized ZStructureReader.ZStructureMetadata add(String name, ZStructureData data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(data, out);
+        return append(name, out.toByteArray());
+    }
+
+    public synchronized ZStructureReader.ZStructureMetadata add(String name, File structureFile) throws IOException {
+        return append(name, Files.readAllBytes(structureFile.toPath()));
+    }
+
+    private ZStructureReader.ZStructureMetadata append(String name, byte[] structure) throws IOException {
+        int nameLength = name.getBytes(StandardCharsets.UTF_8).length;
+        if (nameLength == 0 || nameLength > ZStructureFormat.PACK_MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Length of the name invalid: " + nameLength);
+        }
+        ZStructureReader.ZStructureMetadata header = reader.readMetadata(ZStructureUtils.wrapBuffer(structure));
+        ZStructureReader.ZStructureMetadata metadata = new ZStructureReader.ZStructureMetadata(name, header.getWidth(), header.getHeight(), header.getLength(),
+                header.getBlockCount(), header.getCreationTime(), header.getFlags(), structure.length, header.getDictionaryId(), header.getRawSize());
+
+        long offset = file.length();
+        file.seek(offset);
+        file.write(structure);
+        ZStructurePack.Entry replaced = entries.put(name, new ZStructurePack.Entry(null, offset, structure.length, metadata));
+        liveBytes += structure.length - (replaced == null ? 0 : replaced.getSize());
+        dirty = true;
+        return metadata;
+    }
+
+    public synchronized boolean remove(String name) {
+        ZStructurePack.Entry removed = entries.remove(name);
+        if (removed == null) {
+            return false;
+        }
+        liveBytes -= removed.getSize();
+        dirty = true;
+        return true;
+    }
+
+    public synchronized boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public synchronized Set<String> getNames() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(entries.keySet()));
+    }
+
+    public synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        byte[] toc = ZStructurePack.writeEntries(entries.values());
+        long tocOffset = file.length();
+        file.seek(tocOffset);
+        file.write(toc);
+        file.getFD().sync();
+        file.seek(0);
+        file.write(ZStructurePack.writeHeader(tocOffset, toc.length, entries.size()));
+        file.getFD().sync();
+        tocSize = toc.length;
+        dirty = false;
+    }
+
+    public synchronized long getDeadBytes() throws IOException {
+        return file.length() - ZStructureFormat.PACK_HEADER_SIZE - liveBytes - (dirty ? 0 : tocSize);
+    }
+
+    public synchronized void compact() throws IOException {
+        Path target = path.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Map<String, ZStructurePack.Entry> compacted = new LinkedHashMap<>();
+            byte[] toc;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                FileChannel in = file.getChannel();
+                long offset = ZStructureFormat.PACK_HEADER_SIZE;
+                out.position(offset);
+                for (ZStructurePack.Entry entry : entries.values()) {
+                    long copied = 0;
+                    while (copied < entry.getSize()) {
+                        copied += in.transferTo(entry.getOffset() + copied, entry.getSize() - copied, out);
+                    }
+                    compacted.put(entry.getName(), new ZStructurePack.Entry(null, offset, entry.getSize(), entry.getMetadata()));
+                    offset += entry.getSize();
+                }
+                toc = ZStructurePack.writeEntries(compacted.values());
+                out.write(ByteBuffer.wrap(toc), offset);
+                out.write(ByteBuffer.wrap(ZStructurePack.writeHeader(offset, toc.length, compacted.size())), 0);
+                out.force(true);
+            }
+
+            file.close();
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                file = new RandomAccessFile(path, "rw");
+            }
+            entries = compacted;
+            tocSize = toc.length;
+            dirty = false;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -1,35 +1,390 @@
 package fr.leabar.zstructure.io;
 
-import fr.leabar.zstructure.data.ZStructureBlock;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictDecompress;
+import fr.leabar.zstructure.data.ZStructureBlockStorage;
 import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructureDelta;
 import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.io.format.ZStructureSectionIndex;
+import fr.leabar.zstructure.metrics.ZStructureMetrics;
+import fr.leabar.zstructure.metrics.ZStructureMetricsListener;
+import fr.leabar.zstructure.metrics.ZStructureStage;
 import fr.leabar.zstructure.serializer.ZStructureSerializer;
 import fr.leabar.zstructure.utils.ZStructureUtils;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ZStructureReader {
 
-    private ByteBuffer headerBuffer = ByteBuffer.allocate(ZStructureFormat.HEADER_SIZE);
+    private final ThreadLocal<ByteBuffer> decodeBuffer = ThreadLocal.withInitial(() -> ZStructureUtils.createWriteBuffer(65536));
+    private final ThreadLocal<byte[]> scratchBuffer = ThreadLocal.withInitial(() -> new byte[65536]);
+    private volatile ZStructureSectionExecutor sectionExecutor = new ZStructureSectionExecutor(Runtime.getRuntime().availableProcessors());
+    private boolean ownsSectionExecutor = true;
+    private volatile ZStructureDictionaryRegistry dictionaryRegistry;
+    private volatile ZStructureMetricsListener metricsListener;
+
+    public ZStructureReader() {}
+
+    public ZStructureReader(ZStructureDictionaryRegistry dictionaryRegistry) {
+        this.dictionaryRegistry = dictionaryRegistry;
+    }
 
     public ZStructureData read(File file) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file); BufferedInputStream bis = new BufferedInputStream(fis, 65536)) {
-            return read(bis);
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ZStructureMetrics.record(metrics, ZStructureStage.LOAD_READ, start, 0, mapped.remaining(), 0);
+            ZStructureData data = readBuffer(mapped, metrics);
+            ZStructureMetrics.record(metrics, ZStructureStage.LOAD_TOTAL, start, 0, mapped.capacity(), data.getBlockCount());
+            return data;
+        }
+    }
+
+    public ZStructureData read(ByteBuffer buffer) throws IOException {
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+        int size = buffer.remaining();
+        ZStructureData data = readBuffer(buffer, metrics);
+        ZStructureMetrics.record(metrics, ZStructureStage.LOAD_TOTAL, start, 0, size, data.getBlockCount());
+        return data;
+    }
+
+    private ZStructureData readBuffer(ByteBuffer buffer, ZStructureMetricsListener metrics) throws IOException {
+        ByteBuffer data = buffer.slice();
+        if (data.remaining() < ZStructureFormat.HEADER_SIZE) {
+            throw new IOException("ZSTRUCT header invalid");
+        }
+        HeaderInfo header = parseHeader(data.slice(0, Math.min(data.remaining(), ZStructureFormat.HEADER_SIZE + ZStructureFormat.HEADER_EXTENSION_SIZE)));
+        if (header.version < ZStructureFormat.VERSION_SECTIONED || !data.isDirect()) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            return readStream(new ByteArrayInputStream(bytes), metrics);
+        }
+        long indexOffset = header.headerSize + (long) header.dataSize;
+        if (indexOffset + header.indexSize > data.limit()) {
+            throw new IOException("ZSTRUCT file truncated");
         }
+
+        ZstdDictDecompress dictionary = resolveDictionary(header);
+        long indexStart = ZStructureMetrics.start(metrics);
+        byte[] compressedIndex = new byte[header.indexSize];
+        data.get((int) indexOffset, compressedIndex);
+        ZStructureSectionIndex index = readIndex(header, ZStructureUtils.decompress(compressedIndex, dictionary));
+        long indexNanos = metrics == null ? 0 : System.nanoTime() - indexStart;
+
+        return decodeSections(header, index, metrics, indexNanos, section -> {
+            int rawLength = index.getRawLength(section);
+            ByteBuffer raw = acquireDecodeBuffer(rawLength);
+            ZStructureUtils.decompress(data, header.headerSize + index.getOffset(section), index.getCompressedLength(section), raw.clear(), rawLength, dictionary);
+            return raw.limit(rawLength);
+        });
+    }
+
+    private ZStructureData decodeSections(HeaderInfo header, ZStructureSectionIndex index, ZStructureMetricsListener metrics, long indexNanos, SectionSource source) throws IOException {
+        ZStructureSectionExecutor executor = ZStructureSectionExecutor.acquire(() -> sectionExecutor);
+        try {
+            return decodeSections(executor, header, index, metrics, indexNanos, source);
+        } finally {
+            executor.release();
+        }
+    }
+
+    private ZStructureData decodeSections(ZStructureSectionExecutor executor, HeaderInfo header, ZStructureSectionIndex index, ZStructureMetricsListener metrics, long indexNanos, SectionSource source) throws IOException {
+        LongAdder decompressNanos = metrics == null ? null : new LongAdder();
+        LongAdder deserializeNanos = metrics == null ? null : new LongAdder();
+        long buildNanos = 0;
+        ZStructureBlockStorage storage = createStorage(header.width * header.height * header.length, index);
+        int size = ZStructureFormat.SECTION_SIZE;
+        int sectionsY = index.getSectionsY();
+        int sectionsZ = index.getSectionsZ();
+        int batchSize = Math.max(64, executor.getParallelism() * 4);
+
+        for (int first = 0; first < index.getSectionCount(); first += batchSize) {
+            int batchStart = first;
+            List<int[]> batch = executor.map(Math.min(batchSize, index.getSectionCount() - first), i -> {
+                int section = batchStart + i;
+                if (index.getCompressedLength(section) == 0) {
+                    return null;
+                }
+                int sx = section / (sectionsY * sectionsZ);
+                int sy = (section / sectionsZ) % sectionsY;
+                int sz = section % sectionsZ;
+                int minX = sx * size, minY = sy * size, minZ = sz * size;
+                int sizeY = Math.min(minY + size, header.height) - minY;
+                int sizeZ = Math.min(minZ + size, header.length) - minZ;
+                int[] values = new int[(Math.min(minX + size, header.width) - minX) * sizeY * sizeZ];
+                long start = ZStructureMetrics.start(metrics);
+                ByteBuffer raw = source.decompress(section);
+                long decoded = ZStructureMetrics.start(metrics);
+                decodeSection(header, index, sx, sy, sz, raw, (x, y, z, paletteIndex) ->
+                        values[((x - minX) * sizeY + y - minY) * sizeZ + z - minZ] = paletteIndex + 1
+                );
+                if (metrics != null) {
+                    decompressNanos.add(decoded - start);
+                    deserializeNanos.add(System.nanoTime() - decoded);
+                }
+                return values;
+            });
+
+            long buildStart = ZStructureMetrics.start(metrics);
+            for (int i = 0; i < batch.size(); i++) {
+                int[] values = batch.get(i);
+                if (values == null) {
+                    continue;
+                }
+                int section = batchStart + i;
+                int minX = section / (sectionsY * sectionsZ) * size;
+                int minY = (section / sectionsZ) % sectionsY * size;
+                int minZ = section % sectionsZ * size;
+                int sizeY = Math.min(minY + size, header.height) - minY;
+                int sizeZ = Math.min(minZ + size, header.length) - minZ;
+                int cell = 0;
+                for (int x = minX; cell < values.length; x++) {
+                    for (int y = minY; y < minY + sizeY; y++) {
+                        int base = (x * header.height + y) * header.length;
+                        for (int z = minZ; z < minZ + sizeZ; z++) {
+                            int value = values[cell++];
+                            if (value != 0) {
+                                storage.set(base + z, value);
+                            }
+                        }
+                    }
+                }
+            }
+            if (metrics != null) {
+                buildNanos += System.nanoTime() - buildStart;
+            }
+        }
+        long buildStart = ZStructureMetrics.start(metrics);
+        ZStructureData data = new ZStructureData(header.name, header.width, header.height, header.length, index.getPalette(), storage);
+        if (metrics != null) {
+            long rawBytes = 0;
+            for (int section = 0; section < index.getSectionCount(); section++) {
+                rawBytes += index.getRawLength(section);
+            }
+            metrics.onStage(ZStructureStage.LOAD_DECOMPRESS, indexNanos + decompressNanos.sum(), rawBytes, header.dataSize + (long) header.indexSize, 0);
+            metrics.onStage(ZStructureStage.LOAD_DESERIALIZE, deserializeNanos.sum(), rawBytes, 0, data.getBlockCount());
+            metrics.onStage(ZStructureStage.LOAD_BUILD, buildNanos + System.nanoTime() - buildStart, 0, 0, data.getBlockCount());
+        }
+        return data;
+    }
+
+    private ByteBuffer acquireDecodeBuffer(int required) {
+        ByteBuffer buffer = decodeBuffer.get();
+        if (buffer.capacity() < required) {
+            buffer = ZStructureUtils.createWriteBuffer(Math.max(required, buffer.capacity() * 2));
+            decodeBuffer.set(buffer);
+        }
+        return buffer;
     }
 
     public ZStructureData read(InputStream inputStream) throws IOException {
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+        ZStructureData data = readStream(inputStream, metrics);
+        ZStructureMetrics.record(metrics, ZStructureStage.LOAD_TOTAL, start, 0, 0, data.getBlockCount());
+        return data;
+    }
+
+    private ZStructureData readStream(InputStream inputStream, ZStructureMetricsListener metrics) throws IOException {
+        long start = ZStructureMetrics.start(metrics);
         HeaderInfo header = readHeader(inputStream);
-        byte[] compressedIndex = inputStream.readNBytes(header.indexSize);
-        byte[] indexData = ZStructureUtils.decompress(compressedIndex, estimateIndexSize(header));
-        byte[] compressedBlocks = inputStream.readNBytes(header.dataSize);
-        byte[] blockData = ZStructureUtils.decompress(compressedBlocks, estimateBlockSize(header));
-        List<ZStructureBlock> blocks = ZStructureSerializer.deserializeBlocks(blockData);
-        return new ZStructureData(header.name, header.width, header.height, header.length, blocks);
+        if (header.version >= ZStructureFormat.VERSION_SECTIONED) {
+            ZstdDictDecompress dictionary = resolveDictionary(header);
+            byte[] sections = readFully(inputStream, header.dataSize);
+            byte[] compressedIndex = readFully(inputStream, header.indexSize);
+            ZStructureMetrics.record(metrics, ZStructureStage.LOAD_READ, start, 0, sections.length + (long) compressedIndex.length, 0);
+            long indexStart = ZStructureMetrics.start(metrics);
+            ZStructureSectionIndex index = readIndex(header, ZStructureUtils.decompress(compressedIndex, dictionary));
+            long indexNanos = metrics == null ? 0 : System.nanoTime() - indexStart;
+            return decodeSections(header, index, metrics, indexNanos, section -> {
+                int rawLength = index.getRawLength(section);
+                byte[] raw = acquireScratchBuffer(rawLength);
+                ZStructureUtils.decompressInto(sections, index.getOffset(section), index.getCompressedLength(section), raw, rawLength, dictionary);
+                return ZStructureUtils.wrapBuffer(raw, rawLength);
+            });
+        }
+
+        inputStream.skipNBytes(header.indexSize);
+        byte[] compressedBlocks = readFully(inputStream, header.dataSize);
+        ZStructureMetrics.record(metrics, ZStructureStage.LOAD_READ, start, 0, header.indexSize + (long) compressedBlocks.length, 0);
+        long decompressStart = ZStructureMetrics.start(metrics);
+        byte[] blockData = ZStructureUtils.decompress(compressedBlocks);
+        ZStructureMetrics.record(metrics, ZStructureStage.LOAD_DECOMPRESS, decompressStart, blockData.length, compressedBlocks.length, 0);
+        long deserializeStart = ZStructureMetrics.start(metrics);
+        ZStructureData data = ZStructureSerializer.deserializeStructure(blockData, header.version, header.name, header.width, header.height, header.length);
+        ZStructureMetrics.record(metrics, ZStructureStage.LOAD_DESERIALIZE, deserializeStart, blockData.length, 0, data.getBlockCount());
+        return data;
+    }
+
+    public ZStructureDelta readDelta(File file) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file); BufferedInputStream bis = new BufferedInputStream(fis, 65536)) {
+            return readDelta(bis);
+        }
+    }
+
+    public ZStructureDelta readDelta(InputStream inputStream) throws IOException {
+        ByteBuffer header = ZStructureUtils.wrapBuffer(readFully(inputStream, ZStructureFormat.DELTA_HEADER_SIZE));
+        if (ZStructureUtils.readInt(header) != ZStructureFormat.DELTA_MAGIC_NUMBER) {
+            throw new IOException("ZDELTA file invalid (magic number incorrect)");
+        }
+        byte version = header.get();
+        if (version < 1 || version > ZStructureFormat.DELTA_VERSION) {
+            throw new IOException("ZDELTA FILE VERSION INVALID : " + version);
+        }
+        header.get();
+        header.getShort();
+        int width = ZStructureUtils.readInt(header);
+        int height = ZStructureUtils.readInt(header);
+        int length = ZStructureUtils.readInt(header);
+        int changeCount = ZStructureUtils.readInt(header);
+        ZStructureUtils.readLong(header);
+        int compressedSize = ZStructureUtils.readInt(header);
+        int rawSize = ZStructureUtils.readInt(header);
+        short nameLength = header.getShort();
+        if (nameLength < 0 || compressedSize < 0 || rawSize < 0) {
+            throw new IOException("ZDELTA header invalid");
+        }
+        String name = new String(readFully(inputStream, nameLength), StandardCharsets.UTF_8);
+
+        byte[] compressed = readFully(inputStream, compressedSize);
+        ZStructureDelta delta = ZStructureSerializer.deserializeDelta(ZStructureUtils.decompress(compressed, 0, compressedSize, rawSize), name, width, height, length);
+        if (delta.getChangeCount() != changeCount) {
+            throw new IOException("ZDELTA change count mismatch: expected " + changeCount + ", got " + delta.getChangeCount());
+        }
+        return delta;
+    }
+
+    public ZStructureStreamReader openStream(File file) throws IOException {
+        HeaderInfo header;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            header = readHeader(channel);
+        }
+        if (header.version < ZStructureFormat.VERSION_SECTIONED) {
+            throw new IOException("ZSTRUCT streaming requires format version " + ZStructureFormat.VERSION_SECTIONED + " or newer: " + header.version);
+        }
+        return new ZStructureStreamReader(file, header.name, header.width, header.height, header.length, header.blockCount,
+                header.headerSize, header.dataSize, header.indexSize, resolveDictionary(header));
+    }
+
+    public ZStructureData readRegion(File file, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            HeaderInfo header = readHeader(channel);
+
+            int fromX = Math.max(0, minX), toX = Math.min(header.width - 1, maxX);
+            int fromY = Math.max(0, minY), toY = Math.min(header.height - 1, maxY);
+            int fromZ = Math.max(0, minZ), toZ = Math.min(header.length - 1, maxZ);
+            if (fromX > toX || fromY > toY || fromZ > toZ) {
+                throw new IllegalArgumentException("Region does not intersect the structure");
+            }
+            int regionWidth = toX - fromX + 1;
+            int regionHeight = toY - fromY + 1;
+            int regionLength = toZ - fromZ + 1;
+
+            if (header.version < ZStructureFormat.VERSION_SECTIONED) {
+                ZStructureData full = read(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 65536));
+                ZStructureBlockStorage storage = new ZStructureBlockStorage(regionWidth * regionHeight * regionLength);
+                full.forEachBlockInRegion(fromX, fromY, fromZ, toX, toY, toZ, block -> storage.set(
+                        ((block.x() - fromX) * regionHeight + block.y() - fromY) * regionLength + block.z() - fromZ,
+                        full.getPalette().indexOf(block.blockDataString()) + 1
+                ));
+                return new ZStructureData(header.name, regionWidth, regionHeight, regionLength, full.getPalette(), storage);
+            }
+
+            ZstdDictDecompress dictionary = resolveDictionary(header);
+            byte[] compressedIndex = readFully(channel, header.headerSize + (long) header.dataSize, header.indexSize);
+            ZStructureSectionIndex index = readIndex(header, ZStructureUtils.decompress(compressedIndex, dictionary));
+            ZStructureBlockStorage storage = createStorage(regionWidth * regionHeight * regionLength, index);
+
+            int size = ZStructureFormat.SECTION_SIZE;
+            byte[] compressed = new byte[0];
+            for (int sx = fromX / size; sx <= toX / size; sx++) {
+                for (int sy = fromY / size; sy <= toY / size; sy++) {
+                    for (int sz = fromZ / size; sz <= toZ / size; sz++) {
+                        int section = index.sectionAt(sx, sy, sz);
+                        if (index.getCompressedLength(section) == 0) {
+                            continue;
+                        }
+                        int compressedLength = index.getCompressedLength(section);
+                        int rawLength = index.getRawLength(section);
+                        if (compressed.length < compressedLength) {
+                            compressed = new byte[compressedLength];
+                        }
+                        readFully(channel, ByteBuffer.wrap(compressed, 0, compressedLength), header.headerSize + (long) index.getOffset(section));
+                        byte[] raw = acquireScratchBuffer(rawLength);
+                        ZStructureUtils.decompressInto(compressed, 0, compressedLength, raw, rawLength, dictionary);
+                        decodeSection(header, index, sx, sy, sz, ZStructureUtils.wrapBuffer(raw, rawLength), (x, y, z, paletteIndex) -> {
+                            if (x >= fromX && x <= toX && y >= fromY && y <= toY && z >= fromZ && z <= toZ) {
+                                storage.set(((x - fromX) * regionHeight + y - fromY) * regionLength + z - fromZ, paletteIndex + 1);
+                            }
+                        });
+                    }
+                }
+            }
+            return new ZStructureData(header.name, regionWidth, regionHeight, regionLength, index.getPalette(), storage);
+        }
+    }
+
+    private byte[] acquireScratchBuffer(int required) {
+        byte[] buffer = scratchBuffer.get();
+        if (buffer.length < required) {
+            buffer = new byte[Math.max(required, buffer.length * 2)];
+            scratchBuffer.set(buffer);
+        }
+        return buffer;
+    }
+
+    private void decodeSection(HeaderInfo header, ZStructureSectionIndex index, int sx, int sy, int sz, ByteBuffer raw, ZStructureData.BlockIndexConsumer consumer) throws IOException {
+        int size = ZStructureFormat.SECTION_SIZE;
+        ZStructureSerializer.deserializeSection(raw,
+                sx * size, sy * size, sz * size,
+                Math.min((sx + 1) * size, header.width),
+                Math.min((sy + 1) * size, header.height),
+                Math.min((sz + 1) * size, header.length),
+                index.getPalette().size(), consumer);
+    }
+
+    private ZStructureSectionIndex readIndex(HeaderInfo header, byte[] indexData) throws IOException {
+        return ZStructureSectionIndex.read(indexData, header.width, header.height, header.length, header.dataSize);
+    }
+
+    private ZStructureBlockStorage createStorage(int volume, ZStructureSectionIndex index) {
+        return new ZStructureBlockStorage(volume, 32 - Integer.numberOfLeadingZeros(index.getPalette().size()));
+    }
+
+    private byte[] readFully(InputStream inputStream, int length) throws IOException {
+        byte[] data = inputStream.readNBytes(length);
+        if (data.length != length) {
+            throw new IOException("ZSTRUCT file truncated");
+        }
+        return data;
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        byte[] data = new byte[length];
+        readFully(channel, ByteBuffer.wrap(data), position);
+        return data;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                throw new IOException("ZSTRUCT file truncated");
+            }
+            position += read;
+        }
     }
 
     public CompletableFuture<ZStructureData> readAsync(File file) {
@@ -43,30 +398,129 @@ public class ZStructureReader {
     }
 
     public ZStructureMetadata readMetadata(File file) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file); BufferedInputStream bis = new BufferedInputStream(fis, ZStructureFormat.HEADER_SIZE + 1024)) {
-            HeaderInfo header = readHeader(bis);
-            return new ZStructureMetadata(header.name, header.width, header.height, header.length, header.blockCount, header.creationTime, header.flags, file.length());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            HeaderInfo header = readHeader(channel);
+            long rawSize = header.rawSize > 0 ? header.rawSize : readRawSize(channel, header);
+            return new ZStructureMetadata(header.name, header.width, header.height, header.length, header.blockCount, header.creationTime, header.flags, channel.size(), header.dictionaryId, rawSize);
+        }
+    }
+
+    public ZStructureMetadata readMetadata(ByteBuffer buffer) throws IOException {
+        ByteBuffer data = buffer.slice();
+        if (data.remaining() < ZStructureFormat.HEADER_SIZE) {
+            throw new IOException("ZSTRUCT header invalid");
+        }
+        HeaderInfo header = parseHeader(data.slice(0, Math.min(data.remaining(), ZStructureFormat.HEADER_SIZE + ZStructureFormat.HEADER_EXTENSION_SIZE)));
+        long rawSize = header.rawSize > 0 ? header.rawSize : readRawSize(data, header);
+        return new ZStructureMetadata(header.name, header.width, header.height, header.length, header.blockCount, header.creationTime, header.flags, data.remaining(), header.dictionaryId, rawSize);
+    }
+
+    private long readRawSize(FileChannel channel, HeaderInfo header) throws IOException {
+        if (header.version >= ZStructureFormat.VERSION_SECTIONED) {
+            return readSectionedRawSize(readFully(channel, header.headerSize + (long) header.dataSize, header.indexSize), header);
         }
+        return readFrameContentSize(channel, header.headerSize, header.indexSize)
+                + readFrameContentSize(channel, header.headerSize + (long) header.indexSize, header.dataSize);
+    }
+
+    private long readRawSize(ByteBuffer data, HeaderInfo header) throws IOException {
+        if ((long) header.headerSize + header.indexSize + header.dataSize > data.remaining()) {
+            throw new IOException("ZSTRUCT file truncated");
+        }
+        if (header.version >= ZStructureFormat.VERSION_SECTIONED) {
+            byte[] compressedIndex = new byte[header.indexSize];
+            data.get(header.headerSize + header.dataSize, compressedIndex);
+            return readSectionedRawSize(compressedIndex, header);
+        }
+        return readFrameContentSize(data, header.headerSize, header.indexSize)
+                + readFrameContentSize(data, header.headerSize + header.indexSize, header.dataSize);
+    }
+
+    private long readSectionedRawSize(byte[] compressedIndex, HeaderInfo header) throws IOException {
+        byte[] indexData = ZStructureUtils.decompress(compressedIndex, resolveDictionary(header));
+        ZStructureSectionIndex index = readIndex(header, indexData);
+        long rawSize = indexData.length;
+        for (int section = 0; section < index.getSectionCount(); section++) {
+            rawSize += index.getRawLength(section);
+        }
+        return rawSize;
+    }
+
+    private long readFrameContentSize(FileChannel channel, long offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        return frameContentSize(readFully(channel, offset, Math.min(length, ZStructureFormat.FRAME_HEADER_MAX_SIZE)));
+    }
+
+    private long readFrameContentSize(ByteBuffer data, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        byte[] frameHeader = new byte[Math.min(length, ZStructureFormat.FRAME_HEADER_MAX_SIZE)];
+        data.get(offset, frameHeader);
+        return frameContentSize(frameHeader);
+    }
+
+    private long frameContentSize(byte[] frameHeader) throws IOException {
+        long contentSize = Zstd.getFrameContentSize(frameHeader);
+        if (contentSize < 0) {
+            throw new IOException("Zstd frame content size unavailable: " + contentSize);
+        }
+        return contentSize;
+    }
+
+    private ZstdDictDecompress resolveDictionary(HeaderInfo header) throws IOException {
+        if (header.dictionaryId == 0) {
+            return null;
+        }
+        ZStructureDictionaryRegistry registry = dictionaryRegistry;
+        ZStructureDictionary dictionary = registry == null ? null : registry.get(header.dictionaryId);
+        if (dictionary == null) {
+            throw new IOException("ZSTRUCT dictionary not registered: " + Integer.toUnsignedString(header.dictionaryId));
+        }
+        return dictionary.getDecompressor();
     }
 
     private HeaderInfo readHeader(InputStream inputStream) throws IOException {
-        headerBuffer.clear();
         byte[] headerBytes = inputStream.readNBytes(ZStructureFormat.HEADER_SIZE);
         if (headerBytes.length != ZStructureFormat.HEADER_SIZE) {
             throw new IOException("ZSTRUCT header invalid");
         }
-        headerBuffer.put(headerBytes);
-        headerBuffer.flip();
+        int headerSize = ZStructureFormat.headerSize(headerBytes[4]);
+        if (headerSize > ZStructureFormat.HEADER_SIZE) {
+            byte[] extension = inputStream.readNBytes(headerSize - ZStructureFormat.HEADER_SIZE);
+            headerBytes = Arrays.copyOf(headerBytes, ZStructureFormat.HEADER_SIZE + extension.length);
+            System.arraycopy(extension, 0, headerBytes, ZStructureFormat.HEADER_SIZE, extension.length);
+        }
+        return parseHeader(ZStructureUtils.wrapBuffer(headerBytes));
+    }
+
+    private HeaderInfo readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ZStructureUtils.wrapBuffer(new byte[ZStructureFormat.HEADER_SIZE + ZStructureFormat.HEADER_EXTENSION_SIZE]);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                break;
+            }
+        }
+        if (header.position() < ZStructureFormat.HEADER_SIZE) {
+            throw new IOException("ZSTRUCT header invalid");
+        }
+        return parseHeader(header.flip());
+    }
+
+    private HeaderInfo parseHeader(ByteBuffer headerBuffer) throws IOException {
         int magic = ZStructureUtils.readInt(headerBuffer);
         if (magic != ZStructureFormat.MAGIC_NUMBER) {
             throw new IOException("ZSTRUCT file invalid (magic number incorrect)");
         }
         byte version = headerBuffer.get();
-        if (version != ZStructureFormat.FORMAT_VERSION) {
+        if (version < ZStructureFormat.VERSION_MATERIAL_PALETTE || version > ZStructureFormat.FORMAT_VERSION) {
             throw new IOException("ZSTRUCT FILE VERSION INVALID : " + version);
         }
 
         HeaderInfo header = new HeaderInfo();
+        header.version = version;
         header.flags = headerBuffer.get();
         headerBuffer.getShort();
         header.width = ZStructureUtils.readInt(headerBuffer);
@@ -85,38 +539,98 @@ public class ZStructureReader {
         headerBuffer.get(nameBytes);
         header.name = new String(nameBytes, StandardCharsets.UTF_8);
 
+        header.headerSize = ZStructureFormat.headerSize(version);
+        if (header.headerSize > ZStructureFormat.HEADER_SIZE) {
+            if (headerBuffer.limit() < header.headerSize) {
+                throw new IOException("ZSTRUCT header invalid");
+            }
+            headerBuffer.position(ZStructureFormat.HEADER_SIZE);
+            header.dictionaryId = ZStructureUtils.readInt(headerBuffer);
+            header.rawSize = Integer.toUnsignedLong(ZStructureUtils.readInt(headerBuffer));
+        }
+
         return header;
     }
 
 
-    private int estimateIndexSize(HeaderInfo header) {
-        int chunkSize = 16;
-        int chunksX = (header.width+chunkSize-1)/chunkSize;
-        int chunksY = (header.height+chunkSize-1)/chunkSize;
-        int chunksZ = (header.length+chunkSize-1)/chunkSize;
-        return 16 + (chunksX*chunksY*chunksZ*4);
+    public ZStructureMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    public void setMetricsListener(ZStructureMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public ZStructureDictionaryRegistry getDictionaryRegistry() {
+        return dictionaryRegistry;
     }
 
-    private int estimateBlockSize(HeaderInfo header) {
-        return header.blockCount*50;
+    public void setDictionaryRegistry(ZStructureDictionaryRegistry dictionaryRegistry) {
+        this.dictionaryRegistry = dictionaryRegistry;
     }
 
+    public int getParallelism() {
+        return sectionExecutor.getParallelism();
+    }
+
+    public void setParallelism(int parallelism) {
+        replaceSectionExecutor(new ZStructureSectionExecutor(parallelism), true);
+    }
+
+    public ZStructureSectionExecutor getSectionExecutor() {
+        return sectionExecutor;
+    }
+
+    public void setSectionExecutor(ZStructureSectionExecutor sectionExecutor) {
+        replaceSectionExecutor(sectionExecutor, false);
+    }
+
+    private synchronized void replaceSectionExecutor(ZStructureSectionExecutor executor, boolean owned) {
+        ZStructureSectionExecutor previous = sectionExecutor;
+        boolean ownedPrevious = ownsSectionExecutor;
+        sectionExecutor = executor;
+        ownsSectionExecutor = owned;
+        if (ownedPrevious && previous != executor) {
+            previous.shutdown();
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (ownsSectionExecutor) {
+            sectionExecutor.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SectionSource {
+        ByteBuffer decompress(int section) throws IOException;
+    }
 
     private static class HeaderInfo {
         String name;
         int width, height, length, blockCount, indexSize, dataSize;
-        long creationTime;
-        byte flags;
+        int headerSize, dictionaryId;
+        long creationTime, rawSize;
+        byte version, flags;
     }
 
 
     public static class ZStructureMetadata {
         private final String name;
         private final int width, height, length, blockCount;
-        private final long creationTime, fileSize;
+        private final long creationTime, fileSize, rawSize;
         private final byte flags;
+        private final int dictionaryId;
 
         public ZStructureMetadata(String name, int width, int height, int length, int blockCount, long creationTime, byte flags, long fileSize) {
+            this(name, width, height, length, blockCount, creationTime, flags, fileSize, 0);
+        }
+
+        public ZStructureMetadata(String name, int width, int height, int length, int blockCount, long creationTime, byte flags, long fileSize, int dictionaryId) {
+            this(name, width, height, length, blockCount, creationTime, flags, fileSize, dictionaryId, 0);
+        }
+
+        public ZStructureMetadata(String name, int width, int height, int length, int blockCount, long creationTime, byte flags, long fileSize, int dictionaryId, long rawSize) {
             this.name = name;
             this.width = width;
             this.height = height;
@@ -125,6 +639,8 @@ public class ZStructureReader {
             this.creationTime = creationTime;
             this.flags = flags;
             this.fileSize = fileSize;
+            this.dictionaryId = dictionaryId;
+            this.rawSize = rawSize;
         }
 
         public String getName() {
@@ -171,9 +687,20 @@ public class ZStructureReader {
             return (flags & ZStructureFormat.FLAG_INDEXED) != 0;
         }
 
+        public int getDictionaryId() {
+            return dictionaryId;
+        }
+
+        public boolean usesDictionary() {
+            return dictionaryId != 0;
+        }
+
+        public long getRawSize() {
+            return rawSize;
+        }
+
         public double getCompressionRatio() {
-            double estimatedUncompressed = blockCount * 50.0;
-            return estimatedUncompressed / fileSize;
+            return fileSize == 0 ? 0 : (double) rawSize / fileSize;
         }
 
         @Override
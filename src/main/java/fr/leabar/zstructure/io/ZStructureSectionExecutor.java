@@ -0,0 +1,183 @@
+package fr.leabar.zstructure.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+public class ZStructureSectionExecutor {
+    private static final int SHUTDOWN = Integer.MIN_VALUE;
+
+    private final int parallelism;
+    private final AtomicInteger state = new AtomicInteger();
+    private volatile ForkJoinPool pool;
+
+    public ZStructureSectionExecutor(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    static ZStructureSectionExecutor acquire(Supplier<ZStructureSectionExecutor> current) {
+        while (true) {
+            ZStructureSectionExecutor executor = current.get();
+            if (executor.tryAcquire()) {
+                return executor;
+            }
+            if (executor == current.get()) {
+                throw new IllegalStateException("Section executor shut down");
+            }
+        }
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = state.get();
+            if (current < 0) {
+                return false;
+            }
+            if (state.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean retain() {
+        while (true) {
+            int current = state.get();
+            if (current == SHUTDOWN) {
+                return false;
+            }
+            if (state.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        if (state.decrementAndGet() == SHUTDOWN) {
+            terminate();
+        }
+    }
+
+    public void shutdown() {
+        while (true) {
+            int current = state.get();
+            if (current < 0) {
+                return;
+            }
+            if (state.compareAndSet(current, current | SHUTDOWN)) {
+                if (current == 0) {
+                    terminate();
+                }
+                return;
+            }
+        }
+    }
+
+    public boolean isShutdown() {
+        return state.get() < 0;
+    }
+
+    private synchronized void terminate() {
+        ForkJoinPool current = pool;
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+
+    public <T> T compute(Computation<T> computation) throws IOException {
+        if (!retain()) {
+            throw new IllegalStateException("Section executor shut down");
+        }
+        try {
+            ForkJoinTask<T> task = pool().submit(() -> {
+                try {
+                    return computation.compute();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                task.cancel(false);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a section worker");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                if (cause instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new IOException("Error during section computation", cause);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    <T> List<T> map(int count, SectionTask<T> task) throws IOException {
+        if (parallelism == 1 || count < 2) {
+            List<T> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add(task.run(i));
+            }
+            return results;
+        }
+        try {
+            return pool().submit(() -> IntStream.range(0, count).parallel().mapToObj(i -> {
+                try {
+                    return task.run(i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toList()).join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private ForkJoinPool pool() {
+        ForkJoinPool current = pool;
+        if (current == null) {
+            synchronized (this) {
+                current = pool;
+                if (current == null) {
+                    pool = current = new ForkJoinPool(parallelism);
+                }
+            }
+        }
+        return current;
+    }
+
+    @FunctionalInterface
+    interface SectionTask<T> {
+        T run(int index) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Computation<T> {
+        T compute() throws IOException;
+    }
+}
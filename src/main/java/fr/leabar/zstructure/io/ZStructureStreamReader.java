@@ -0,0 +1,102 @@
+package fr.leabar.zstructure.io;
+
+import com.github.luben.zstd.ZstdDictDecompress;
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructurePalette;
+import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.io.format.ZStructureSectionIndex;
+import fr.leabar.zstructure.serializer.ZStructureSerializer;
+import fr.leabar.zstructure.utils.ZStructureUtils;
+
+import java.io.*;
+
+public class ZStructureStreamReader implements AutoCloseable {
+    private final RandomAccessFile file;
+    private final String name;
+    private final int width, height, length, blockCount;
+    private final int headerSize;
+    private final ZstdDictDecompress dictionary;
+    private final ZStructureSectionIndex index;
+
+    ZStructureStreamReader(File file, String name, int width, int height, int length, int blockCount, int headerSize, int dataSize, int indexSize, ZstdDictDecompress dictionary) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.blockCount = blockCount;
+        this.headerSize = headerSize;
+        this.dictionary = dictionary;
+        try {
+            byte[] compressedIndex = new byte[indexSize];
+            this.file.seek(headerSize + (long) dataSize);
+            this.file.readFully(compressedIndex);
+            this.index = ZStructureSectionIndex.read(ZStructureUtils.decompress(compressedIndex, dictionary), width, height, length, dataSize);
+        } catch (IOException | RuntimeException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    public void forEachBlock(ZStructureData.BlockIndexConsumer consumer) throws IOException {
+        int maxCompressed = 0;
+        int maxRaw = 0;
+        for (int section = 0; section < index.getSectionCount(); section++) {
+            maxCompressed = Math.max(maxCompressed, index.getCompressedLength(section));
+            maxRaw = Math.max(maxRaw, index.getRawLength(section));
+        }
+        byte[] compressed = new byte[maxCompressed];
+        byte[] raw = new byte[maxRaw];
+
+        int size = ZStructureFormat.SECTION_SIZE;
+        for (int sx = 0; sx < index.getSectionsX(); sx++) {
+            for (int sy = 0; sy < index.getSectionsY(); sy++) {
+                for (int sz = 0; sz < index.getSectionsZ(); sz++) {
+                    int section = index.sectionAt(sx, sy, sz);
+                    int compressedLength = index.getCompressedLength(section);
+                    if (compressedLength == 0) {
+                        continue;
+                    }
+                    file.seek(headerSize + (long) index.getOffset(section));
+                    file.readFully(compressed, 0, compressedLength);
+                    ZStructureUtils.decompressInto(compressed, 0, compressedLength, raw, index.getRawLength(section), dictionary);
+                    ZStructureSerializer.deserializeSection(ZStructureUtils.wrapBuffer(raw, index.getRawLength(section)),
+                            sx * size, sy * size, sz * size,
+                            Math.min((sx + 1) * size, width),
+                            Math.min((sy + 1) * size, height),
+                            Math.min((sz + 1) * size, length),
+                            index.getPalette().size(), consumer);
+                }
+            }
+        }
+    }
+
+    public ZStructurePalette getPalette() {
+        return index.getPalette();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,155 @@
+package fr.leabar.zstructure.io;
+
+import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.data.ZStructureBlockStorage;
+import fr.leabar.zstructure.data.ZStructurePalette;
+import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.io.format.ZStructureSectionIndex;
+import fr.leabar.zstructure.serializer.ZStructureSerializer;
+import fr.leabar.zstructure.utils.ZStructureUtils;
+import org.bukkit.block.data.BlockData;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Writes a sectioned structure from blocks appended in capture order (x, then y, then z).
+ * Capture order completes a row of sections only once x crosses a 16-block boundary, so the
+ * writer buffers one 16 x height x length slab, bit-packed to the current palette size.
+ */
+public class ZStructureStreamWriter implements AutoCloseable {
+    private final RandomAccessFile file;
+    private final String name;
+    private final int width, height, length;
+    private final int compressionLevel;
+    private final ZStructureDictionary dictionary;
+    private final long creationTime = System.currentTimeMillis();
+    private final ZStructurePalette palette = new ZStructurePalette();
+    private final ZStructureSectionIndex index;
+    private ZStructureBlockStorage slab;
+    private final int[] sectionValues;
+    private int slabX;
+    private long lastPosition = -1;
+    private int blockCount;
+    private long nonAirCount;
+    private int dataSize;
+    private long rawSize;
+    private boolean closed;
+
+    ZStructureStreamWriter(File file, String name, int width, int height, int length, int compressionLevel, ZStructureDictionary dictionary) throws IOException {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.compressionLevel = compressionLevel;
+        this.dictionary = dictionary;
+        this.index = ZStructureSectionIndex.forStructure(width, height, length, palette);
+        this.slab = new ZStructureBlockStorage(Math.multiplyExact(Math.multiplyExact(ZStructureFormat.SECTION_SIZE, height), length));
+        int size = ZStructureFormat.SECTION_SIZE;
+        this.sectionValues = new int[size * size * size];
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.file.write(new byte[ZStructureFormat.headerSize(ZStructureFormat.FORMAT_VERSION)]);
+    }
+
+    public void append(ZStructureBlock block) throws IOException {
+        append(block.x(), block.y(), block.z(), palette.getOrAdd(block.blockDataString(), block.material()));
+    }
+
+    public void append(int x, int y, int z, BlockData blockData) throws IOException {
+        append(x, y, z, palette.getOrAdd(blockData.getAsString(), blockData.getMaterial()));
+    }
+
+    public void append(int x, int y, int z, String state) throws IOException {
+        append(x, y, z, palette.getOrAdd(state));
+    }
+
+    private void append(int x, int y, int z, int paletteIndex) throws IOException {
+        if (closed) {
+            throw new IOException("Stream writer closed");
+        }
+        if (x < 0 || x >= width || y < 0 || y >= height || z < 0 || z >= length) {
+            throw new IllegalArgumentException("Block outside of the structure bounds: " + x + "," + y + "," + z);
+        }
+        long position = ((long) x * height + y) * length + z;
+        if (position <= lastPosition) {
+            throw new IllegalArgumentException("Blocks must be appended in capture order (x, then y, then z)");
+        }
+        lastPosition = position;
+
+        int targetSlab = x / ZStructureFormat.SECTION_SIZE;
+        while (slabX < targetSlab) {
+            flushSlab();
+        }
+        slab.set(((x % ZStructureFormat.SECTION_SIZE) * height + y) * length + z, paletteIndex + 1);
+        blockCount++;
+        if (!palette.isAir(paletteIndex)) {
+            nonAirCount++;
+        }
+    }
+
+    private void flushSlab() throws IOException {
+        int size = ZStructureFormat.SECTION_SIZE;
+        int minX = slabX * size;
+        int sizeX = Math.min(size, width - minX);
+        for (int sy = 0; sy < index.getSectionsY(); sy++) {
+            for (int sz = 0; sz < index.getSectionsZ(); sz++) {
+                int minY = sy * size, sizeY = Math.min(size, height - minY);
+                int minZ = sz * size, sizeZ = Math.min(size, length - minZ);
+                int cell = 0;
+                int sectionBlocks = 0;
+                for (int x = 0; x < sizeX; x++) {
+                    for (int y = minY; y < minY + sizeY; y++) {
+                        int base = (x * height + y) * length;
+                        for (int z = minZ; z < minZ + sizeZ; z++) {
+                            int value = slab.get(base + z);
+                            sectionValues[cell++] = value;
+                            if (value != 0) {
+                                sectionBlocks++;
+                            }
+                        }
+                    }
+                }
+                int[] values = cell == sectionValues.length ? sectionValues : Arrays.copyOf(sectionValues, cell);
+                ZStructureSerializer.EncodedSection encoded = ZStructureSerializer.serializeSection(values, sectionBlocks);
+                byte[] compressed = encoded.blockCount() == 0 ? new byte[0] : ZStructureWriter.compress(encoded.data(), compressionLevel, dictionary);
+                index.setSection(index.sectionAt(slabX, sy, sz), encoded.blockCount(), dataSize, compressed.length, encoded.data().length);
+                file.write(compressed);
+                dataSize = Math.addExact(dataSize, compressed.length);
+                rawSize += encoded.data().length;
+            }
+        }
+        slab = new ZStructureBlockStorage(slab.size(), slab.getBitsPerEntry());
+        slabX++;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            while (slabX < index.getSectionsX()) {
+                flushSlab();
+            }
+            byte[] rawIndex = index.toByteArray();
+            byte[] compressedIndex = ZStructureWriter.compress(rawIndex, compressionLevel, dictionary);
+            file.write(compressedIndex);
+
+            byte flags = (byte) (ZStructureFormat.FLAG_INDEXED | ZStructureFormat.calculateFlags(nonAirCount, blockCount, palette.size()) & ~ZStructureFormat.FLAG_SPARSE);
+            if (dictionary != null) {
+                flags |= ZStructureFormat.FLAG_DICTIONARY;
+            }
+            file.seek(0);
+            file.write(ZStructureWriter.createHeader(name, width, height, length, blockCount, creationTime, flags, compressedIndex.length, dataSize,
+                    dictionary == null ? 0 : dictionary.getId(), rawSize + rawIndex.length));
+        } finally {
+            file.close();
+        }
+    }
+}
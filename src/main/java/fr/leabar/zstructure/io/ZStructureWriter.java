@@ -1,19 +1,33 @@
 package fr.leabar.zstructure.io;
 
 
+import com.github.luben.zstd.ZstdDictTrainer;
 import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructureDelta;
 import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.io.format.ZStructureSectionIndex;
+import fr.leabar.zstructure.metrics.ZStructureMetrics;
+import fr.leabar.zstructure.metrics.ZStructureMetricsListener;
+import fr.leabar.zstructure.metrics.ZStructureStage;
 import fr.leabar.zstructure.serializer.ZStructureSerializer;
 import fr.leabar.zstructure.utils.ZStructureUtils;
 
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ZStructureWriter {
 
-    private int compressionLevel = ZStructureFormat.COMPRESSION_LEVEL_DEFAULT;
+    private volatile int compressionLevel = ZStructureFormat.COMPRESSION_LEVEL_DEFAULT;
+    private volatile ZStructureSectionExecutor sectionExecutor = new ZStructureSectionExecutor(Runtime.getRuntime().availableProcessors());
+    private boolean ownsSectionExecutor = true;
+    private volatile ZStructureDictionary dictionary;
+    private volatile ZStructureMetricsListener metricsListener;
 
     public ZStructureWriter() {}
 
@@ -29,17 +43,133 @@ public class ZStructureWriter {
     }
 
     public void write(ZStructureData data, OutputStream outputStream) throws IOException {
-        byte[] blockData = ZStructureSerializer.serializeBlocks(data.getBlocks());
-        byte[] compressedBlocks = ZStructureUtils.compress(blockData, compressionLevel);
+        ZStructureMetricsListener metrics = metricsListener;
+        long start = ZStructureMetrics.start(metrics);
+        LongAdder serializeNanos = metrics == null ? null : new LongAdder();
+        LongAdder compressNanos = metrics == null ? null : new LongAdder();
+        byte flags = calculateFlags(data);
+        boolean skipAir = (flags & ZStructureFormat.FLAG_SPARSE) != 0;
+        ZStructureSectionIndex index = ZStructureSectionIndex.forStructure(data.getWidth(), data.getHeight(), data.getLength(), data.getPalette());
+        int level = compressionLevel;
+        ZStructureDictionary dictionary = this.dictionary;
+        if (dictionary != null) {
+            flags |= ZStructureFormat.FLAG_DICTIONARY;
+        }
+
+        List<CompressedSection> sections = mapSections(index.getSectionCount(), section -> {
+            long encodeStart = ZStructureMetrics.start(metrics);
+            ZStructureSerializer.EncodedSection encoded = encodeSection(data, index, section, skipAir);
+            long compressStart = ZStructureMetrics.start(metrics);
+            byte[] compressed = encoded.blockCount() == 0 ? new byte[0] : compress(encoded.data(), level, dictionary);
+            if (metrics != null) {
+                serializeNanos.add(compressStart - encodeStart);
+                compressNanos.add(System.nanoTime() - compressStart);
+            }
+            return new CompressedSection(compressed, encoded.blockCount(), encoded.data().length);
+        });
 
-        byte[] indexData = createSpatialIndex(data);
-        byte[] compressedIndex = ZStructureUtils.compress(indexData, compressionLevel);
+        int offset = 0;
+        long rawBytes = 0;
+        for (int section = 0; section < sections.size(); section++) {
+            CompressedSection compressed = sections.get(section);
+            index.setSection(section, compressed.blockCount(), offset, compressed.data().length, compressed.rawLength());
+            offset = Math.addExact(offset, compressed.data().length);
+            rawBytes += compressed.rawLength();
+        }
+
+        long indexStart = ZStructureMetrics.start(metrics);
+        byte[] rawIndex = index.toByteArray();
+        long indexCompressStart = ZStructureMetrics.start(metrics);
+        byte[] compressedIndex = compress(rawIndex, level, dictionary);
+        long writeStart = ZStructureMetrics.start(metrics);
+        rawBytes += rawIndex.length;
 
-        writeHeader(outputStream, data, compressedIndex.length, compressedBlocks.length);
+        writeHeader(outputStream, data, flags, compressedIndex.length, offset, dictionary, rawBytes);
 
+        for (CompressedSection section : sections) {
+            outputStream.write(section.data());
+        }
         outputStream.write(compressedIndex);
-        outputStream.write(compressedBlocks);
         outputStream.flush();
+
+        if (metrics != null) {
+            long compressedBytes = (long) offset + compressedIndex.length;
+            metrics.onStage(ZStructureStage.SAVE_SERIALIZE, serializeNanos.sum() + indexCompressStart - indexStart, rawBytes, 0, data.getBlockCount());
+            metrics.onStage(ZStructureStage.SAVE_COMPRESS, compressNanos.sum() + writeStart - indexCompressStart, rawBytes, compressedBytes, 0);
+            ZStructureMetrics.record(metrics, ZStructureStage.SAVE_WRITE, writeStart, 0, compressedBytes, 0);
+            ZStructureMetrics.record(metrics, ZStructureStage.SAVE_TOTAL, start, rawBytes, compressedBytes, data.getBlockCount());
+        }
+    }
+
+    public void writeDelta(ZStructureDelta delta, File file) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file);
+             BufferedOutputStream bos = new BufferedOutputStream(fos, 65536)) {
+            writeDelta(delta, bos);
+        }
+    }
+
+    public void writeDelta(ZStructureDelta delta, OutputStream outputStream) throws IOException {
+        byte[] raw = ZStructureSerializer.serializeDelta(delta);
+        byte[] compressed = compress(raw, compressionLevel, null);
+        byte[] name = delta.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Length of the name invalid: " + name.length);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(ZStructureFormat.DELTA_HEADER_SIZE + name.length);
+        ZStructureUtils.writeInt(header, ZStructureFormat.DELTA_MAGIC_NUMBER);
+        header.put(ZStructureFormat.DELTA_VERSION);
+        header.put((byte) 0);
+        header.putShort((short) 0);
+        ZStructureUtils.writeInt(header, delta.getWidth());
+        ZStructureUtils.writeInt(header, delta.getHeight());
+        ZStructureUtils.writeInt(header, delta.getLength());
+        ZStructureUtils.writeInt(header, delta.getChangeCount());
+        ZStructureUtils.writeLong(header, delta.getCreationTime());
+        ZStructureUtils.writeInt(header, compressed.length);
+        ZStructureUtils.writeInt(header, raw.length);
+        header.putShort((short) name.length);
+        header.put(name);
+
+        outputStream.write(header.array());
+        outputStream.write(compressed);
+        outputStream.flush();
+    }
+
+    public ZStructureStreamWriter openStream(File file, String name, int width, int height, int length) throws IOException {
+        return new ZStructureStreamWriter(file, name, width, height, length, compressionLevel, dictionary);
+    }
+
+    public ZStructureDictionary trainDictionary(Collection<ZStructureData> structures, int dictionarySize) throws IOException {
+        List<byte[]> samples = new ArrayList<>();
+        for (ZStructureData data : structures) {
+            ZStructureSectionIndex index = ZStructureSectionIndex.forStructure(data.getWidth(), data.getHeight(), data.getLength(), data.getPalette());
+            boolean skipAir = (calculateFlags(data) & ZStructureFormat.FLAG_SPARSE) != 0;
+            for (ZStructureSerializer.EncodedSection encoded : mapSections(index.getSectionCount(), section -> encodeSection(data, index, section, skipAir))) {
+                if (encoded.blockCount() > 0) {
+                    samples.add(encoded.data());
+                }
+            }
+            samples.add(index.toByteArray());
+        }
+        return trainDictionary(samples, dictionarySize);
+    }
+
+    public static ZStructureDictionary trainDictionary(List<byte[]> samples, int dictionarySize) {
+        if (samples.isEmpty()) {
+            throw new IllegalArgumentException("No samples to train the dictionary");
+        }
+        long sampleSize = 0;
+        for (byte[] sample : samples) {
+            sampleSize += sample.length;
+        }
+        ZstdDictTrainer trainer = new ZstdDictTrainer((int) Math.min(Integer.MAX_VALUE, sampleSize), dictionarySize);
+        for (byte[] sample : samples) {
+            if (!trainer.addSample(sample)) {
+                break;
+            }
+        }
+        return new ZStructureDictionary(trainer.trainSamples());
     }
 
     public CompletableFuture<Void> writeAsync(ZStructureData data, File file) {
@@ -52,27 +182,51 @@ public class ZStructureWriter {
         });
     }
 
-    private void writeHeader(OutputStream out, ZStructureData data, int indexSize, int dataSize) throws IOException {
-        ByteBuffer header = ByteBuffer.allocate(ZStructureFormat.HEADER_SIZE);
+    private ZStructureSerializer.EncodedSection encodeSection(ZStructureData data, ZStructureSectionIndex index, int section, boolean skipAir) {
+        int size = ZStructureFormat.SECTION_SIZE;
+        int sx = section / (index.getSectionsY() * index.getSectionsZ());
+        int sy = (section / index.getSectionsZ()) % index.getSectionsY();
+        int sz = section % index.getSectionsZ();
+        return ZStructureSerializer.serializeSection(data,
+                sx * size, sy * size, sz * size,
+                Math.min((sx + 1) * size, data.getWidth()),
+                Math.min((sy + 1) * size, data.getHeight()),
+                Math.min((sz + 1) * size, data.getLength()),
+                skipAir);
+    }
+
+    static byte[] compress(byte[] data, int level, ZStructureDictionary dictionary) {
+        if (dictionary == null) {
+            return ZStructureUtils.compress(data, level);
+        }
+        return ZStructureUtils.compress(data, dictionary.getCompressor(level));
+    }
+
+    private void writeHeader(OutputStream out, ZStructureData data, byte flags, int indexSize, int dataSize, ZStructureDictionary dictionary, long rawSize) throws IOException {
+        out.write(createHeader(data.getName(), data.getWidth(), data.getHeight(), data.getLength(), data.getBlockCount(), data.getCreationTime(), flags, indexSize, dataSize,
+                dictionary == null ? 0 : dictionary.getId(), rawSize));
+    }
+
+    static byte[] createHeader(String name, int width, int height, int length, int blockCount, long creationTime, byte flags, int indexSize, int dataSize, int dictionaryId, long rawSize) {
+        int headerSize = ZStructureFormat.headerSize(ZStructureFormat.FORMAT_VERSION);
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
 
         ZStructureUtils.writeInt(header, ZStructureFormat.MAGIC_NUMBER);
         header.put(ZStructureFormat.FORMAT_VERSION);
 
-        byte flags = calculateFlags(data);
         header.put(flags);
 
         header.putShort((short) 0);
 
-        ZStructureUtils.writeInt(header, data.getWidth());
-        ZStructureUtils.writeInt(header, data.getHeight());
-        ZStructureUtils.writeInt(header, data.getLength());
+        ZStructureUtils.writeInt(header, width);
+        ZStructureUtils.writeInt(header, height);
+        ZStructureUtils.writeInt(header, length);
 
-        ZStructureUtils.writeInt(header, data.getBlockCount());
-        ZStructureUtils.writeLong(header, data.getCreationTime());
+        ZStructureUtils.writeInt(header, blockCount);
+        ZStructureUtils.writeLong(header, creationTime);
 
         ZStructureUtils.writeInt(header, indexSize);
         ZStructureUtils.writeInt(header, dataSize);
-        String name = data.getName();
         if (name.length() > 22) {
             name = name.substring(0, 22);
         }
@@ -83,71 +237,81 @@ public class ZStructureWriter {
             header.put((byte) 0);
         }
 
-        out.write(header.array());
+        ZStructureUtils.writeInt(header, dictionaryId);
+        ZStructureUtils.writeInt(header, rawSize <= 0xFFFFFFFFL ? (int) rawSize : 0);
+
+        return header.array();
     }
 
     private byte calculateFlags(ZStructureData data) {
-        byte flags = 0;
-        long nonAirCount = data.getNonAirBlockCount();
-        double density = (double) nonAirCount / data.getBlockCount();
-
-        if (density < 0.7) {
-            flags |= ZStructureFormat.FLAG_SPARSE;
-        }
-
-        if (data.getBlockCount() > 1000) {
-            flags |= ZStructureFormat.FLAG_INDEXED;
-        }
-
-        return flags;
-    }
-
-    private byte[] createSpatialIndex(ZStructureData data) {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             DataOutputStream dos = new DataOutputStream(baos)) {
-            int chunkSize = 16;
-            int chunksX = (data.getWidth() + chunkSize - 1) / chunkSize;
-            int chunksY = (data.getHeight() + chunkSize - 1) / chunkSize;
-            int chunksZ = (data.getLength() + chunkSize - 1) / chunkSize;
-            dos.writeInt(chunkSize);
-            dos.writeInt(chunksX);
-            dos.writeInt(chunksY);
-            dos.writeInt(chunksZ);
-            for (int cx = 0; cx < chunksX; cx++) {
-                for (int cy = 0; cy < chunksY; cy++) {
-                    for (int cz = 0; cz < chunksZ; cz++) {
-                        int blockCount = countBlocksInChunk(data, cx, cy, cz, chunkSize);
-                        dos.writeInt(blockCount);
-                    }
-                }
-            }
-            return baos.toByteArray();
+        return (byte) (ZStructureFormat.FLAG_INDEXED | ZStructureFormat.calculateFlags(data.getNonAirBlockCount(), data.getBlockCount(), data.getPalette().size()));
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException("Error creating spatial index", e);
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = Math.max(1, Math.min(22, compressionLevel));
+    }
+
+    public ZStructureMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    public void setMetricsListener(ZStructureMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    private <T> List<T> mapSections(int count, ZStructureSectionExecutor.SectionTask<T> task) throws IOException {
+        ZStructureSectionExecutor executor = ZStructureSectionExecutor.acquire(() -> sectionExecutor);
+        try {
+            return executor.map(count, task);
+        } finally {
+            executor.release();
         }
     }
 
-    private int countBlocksInChunk(ZStructureData data, int chunkX, int chunkY, int chunkZ, int chunkSize) {
-        int minX = chunkX * chunkSize;
-        int maxX = Math.min(minX + chunkSize, data.getWidth());
-        int minY = chunkY * chunkSize;
-        int maxY = Math.min(minY + chunkSize, data.getHeight());
-        int minZ = chunkZ * chunkSize;
-        int maxZ = Math.min(minZ + chunkSize, data.getLength());
+    public ZStructureDictionary getDictionary() {
+        return dictionary;
+    }
 
-        return (int) data.getBlocks().stream()
-                .filter(block -> block.x() >= minX && block.x() < maxX &&
-                        block.y() >= minY && block.y() < maxY &&
-                        block.z() >= minZ && block.z() < maxZ)
-                .count();
+    public void setDictionary(ZStructureDictionary dictionary) {
+        this.dictionary = dictionary;
     }
 
-    public int getCompressionLevel() {
-        return compressionLevel;
+    public int getParallelism() {
+        return sectionExecutor.getParallelism();
     }
 
-    public void setCompressionLevel(int compressionLevel) {
-        this.compressionLevel = Math.max(1, Math.min(22, compressionLevel));
+    public void setParallelism(int parallelism) {
+        replaceSectionExecutor(new ZStructureSectionExecutor(parallelism), true);
+    }
+
+    public ZStructureSectionExecutor getSectionExecutor() {
+        return sectionExecutor;
+    }
+
+    public void setSectionExecutor(ZStructureSectionExecutor sectionExecutor) {
+        replaceSectionExecutor(sectionExecutor, false);
+    }
+
+    private synchronized void replaceSectionExecutor(ZStructureSectionExecutor executor, boolean owned) {
+        ZStructureSectionExecutor previous = sectionExecutor;
+        boolean ownedPrevious = ownsSectionExecutor;
+        sectionExecutor = executor;
+        ownsSectionExecutor = owned;
+        if (ownedPrevious && previous != executor) {
+            previous.shutdown();
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (ownsSectionExecutor) {
+            sectionExecutor.shutdown();
+        }
+    }
+
+    private record CompressedSection(byte[] data, int blockCount, int rawLength) {
     }
 }
@@ -2,15 +2,57 @@ package fr.leabar.zstructure.io.format;
 
 public class ZStructureFormat {
     public static final int MAGIC_NUMBER = 0x5A535452;
+    public static final String FILE_EXTENSION = ".zstruct";
 
-    public static final byte FORMAT_VERSION = 1;
+    public static final byte VERSION_MATERIAL_PALETTE = 1;
+    public static final byte VERSION_STATE_PALETTE = 2;
+    public static final byte VERSION_SECTIONED = 3;
+    public static final byte VERSION_DICTIONARY = 4;
+    public static final byte VERSION_RUN_LENGTH = 5;
+
+    public static final byte FORMAT_VERSION = VERSION_RUN_LENGTH;
 
     public static final int HEADER_SIZE = 64;
+    public static final int HEADER_EXTENSION_SIZE = 8;
+    public static final int FRAME_HEADER_MAX_SIZE = 18;
+
 
+    public static final int PACK_MAGIC_NUMBER = 0x5A50414B;
+    public static final String PACK_FILE_EXTENSION = ".zpack";
+    public static final byte PACK_VERSION = 1;
+    public static final int PACK_HEADER_SIZE = 24;
+    public static final int PACK_MAX_NAME_LENGTH = Short.MAX_VALUE;
+
+    public static final int DELTA_MAGIC_NUMBER = 0x5A444C54;
+    public static final String DELTA_FILE_EXTENSION = ".zdelta";
+    public static final byte DELTA_VERSION = 1;
+    public static final int DELTA_HEADER_SIZE = 42;
 
     public static final byte FLAG_SPARSE = 0x01;
     public static final byte FLAG_UNIFORM = 0x02;
     public static final byte FLAG_INDEXED = 0x04;
+    public static final byte FLAG_DICTIONARY = 0x08;
+
+    public static final byte SECTION_SPARSE = 0;
+    public static final byte SECTION_DENSE = 1;
+    public static final byte SECTION_RUN_LENGTH = 2;
+
+    public static final int SECTION_SIZE = 16;
 
     public static final int COMPRESSION_LEVEL_DEFAULT = 3;
+
+    public static byte calculateFlags(long nonAirCount, long blockCount, int paletteSize) {
+        byte flags = 0;
+        if ((double) nonAirCount/blockCount < 0.7) {
+            flags |= FLAG_SPARSE;
+        }
+        if (paletteSize < 10) {
+            flags |= FLAG_UNIFORM;
+        }
+        return flags;
+    }
+
+    public static int headerSize(byte version) {
+        return version >= VERSION_DICTIONARY ? HEADER_SIZE + HEADER_EXTENSION_SIZE : HEADER_SIZE;
+    }
 }
\ No newline at end of file
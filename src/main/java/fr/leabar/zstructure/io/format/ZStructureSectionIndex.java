@@ -0,0 +1,140 @@
+package fr.leabar.zstructure.io.format;
+
+import fr.leabar.zstructure.data.ZStructurePalette;
+import fr.leabar.zstructure.utils.ZStructureUtils;
+
+import java.io.*;
+
+public class ZStructureSectionIndex {
+    private final int sectionsX, sectionsY, sectionsZ;
+    private final ZStructurePalette palette;
+    private final int[] blockCounts;
+    private final int[] offsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+
+    public static ZStructureSectionIndex forStructure(int width, int height, int length, ZStructurePalette palette) {
+        return new ZStructureSectionIndex(sectionsFor(width), sectionsFor(height), sectionsFor(length), palette);
+    }
+
+    private ZStructureSectionIndex(int sectionsX, int sectionsY, int sectionsZ, ZStructurePalette palette) {
+        this.sectionsX = sectionsX;
+        this.sectionsY = sectionsY;
+        this.sectionsZ = sectionsZ;
+        this.palette = palette;
+        int count = sectionsX * sectionsY * sectionsZ;
+        this.blockCounts = new int[count];
+        this.offsets = new int[count];
+        this.compressedLengths = new int[count];
+        this.rawLengths = new int[count];
+    }
+
+    private static int sectionsFor(int size) {
+        return (size + ZStructureFormat.SECTION_SIZE - 1) / ZStructureFormat.SECTION_SIZE;
+    }
+
+    public int sectionAt(int sectionX, int sectionY, int sectionZ) {
+        return (sectionX * sectionsY + sectionY) * sectionsZ + sectionZ;
+    }
+
+    public void setSection(int section, int blockCount, int offset, int compressedLength, int rawLength) {
+        blockCounts[section] = blockCount;
+        offsets[section] = offset;
+        compressedLengths[section] = compressedLength;
+        rawLengths[section] = rawLength;
+    }
+
+    public int getSectionsX() {
+        return sectionsX;
+    }
+
+    public int getSectionsY() {
+        return sectionsY;
+    }
+
+    public int getSectionsZ() {
+        return sectionsZ;
+    }
+
+    public int getSectionCount() {
+        return blockCounts.length;
+    }
+
+    public ZStructurePalette getPalette() {
+        return palette;
+    }
+
+    public int getBlockCount(int section) {
+        return blockCounts[section];
+    }
+
+    public int getOffset(int section) {
+        return offsets[section];
+    }
+
+    public int getCompressedLength(int section) {
+        return compressedLengths[section];
+    }
+
+    public int getRawLength(int section) {
+        return rawLengths[section];
+    }
+
+    public byte[] toByteArray() {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
+             DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeInt(ZStructureFormat.SECTION_SIZE);
+            dos.writeInt(sectionsX);
+            dos.writeInt(sectionsY);
+            dos.writeInt(sectionsZ);
+            ZStructureUtils.writeVarInt(dos, palette.size());
+            for (int i = 0; i < palette.size(); i++) {
+                dos.writeUTF(palette.getState(i));
+            }
+            for (int section = 0; section < blockCounts.length; section++) {
+                dos.writeInt(blockCounts[section]);
+                dos.writeInt(offsets[section]);
+                dos.writeInt(compressedLengths[section]);
+                dos.writeInt(rawLengths[section]);
+            }
+            dos.flush();
+            return baos.toByteArray();
+
+        } catch (IOException e) {
+            throw new RuntimeException("Error creating section index", e);
+        }
+    }
+
+    public static ZStructureSectionIndex read(byte[] data, int width, int height, int length, int dataSize) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        int sectionSize = dis.readInt();
+        if (sectionSize != ZStructureFormat.SECTION_SIZE) {
+            throw new IOException("Section size unsupported: " + sectionSize);
+        }
+        int sectionsX = dis.readInt();
+        int sectionsY = dis.readInt();
+        int sectionsZ = dis.readInt();
+        if (sectionsX != sectionsFor(width) || sectionsY != sectionsFor(height) || sectionsZ != sectionsFor(length)) {
+            throw new IOException("Section grid invalid: " + sectionsX + "x" + sectionsY + "x" + sectionsZ + " for " + width + "x" + height + "x" + length);
+        }
+        int paletteSize = ZStructureUtils.readVarInt(dis);
+        ZStructurePalette palette = new ZStructurePalette(paletteSize);
+        for (int i = 0; i < paletteSize; i++) {
+            String state = dis.readUTF();
+            palette.add(state, ZStructurePalette.materialOf(state));
+        }
+
+        ZStructureSectionIndex index = new ZStructureSectionIndex(sectionsX, sectionsY, sectionsZ, palette);
+        for (int section = 0; section < index.getSectionCount(); section++) {
+            int blockCount = dis.readInt();
+            int offset = dis.readInt();
+            int compressedLength = dis.readInt();
+            int rawLength = dis.readInt();
+            if (offset < 0 || compressedLength < 0 || rawLength < 0 || (long) offset + compressedLength > dataSize) {
+                throw new IOException("Section entry invalid: " + section + " (offset " + offset + ", length " + compressedLength + ", data size " + dataSize + ")");
+            }
+            index.setSection(section, blockCount, offset, compressedLength, rawLength);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,16 @@
+package fr.leabar.zstructure.metrics;
+
+public final class ZStructureMetrics {
+
+    private ZStructureMetrics() {}
+
+    public static long start(ZStructureMetricsListener listener) {
+        return listener == null ? 0 : System.nanoTime();
+    }
+
+    public static void record(ZStructureMetricsListener listener, ZStructureStage stage, long start, long rawBytes, long compressedBytes, long blocks) {
+        if (listener != null) {
+            listener.onStage(stage, System.nanoTime() - start, rawBytes, compressedBytes, blocks);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package fr.leabar.zstructure.metrics;
+
+@FunctionalInterface
+public interface ZStructureMetricsListener {
+    void onStage(ZStructureStage stage, long nanos, long rawBytes, long compressedBytes, long blocks);
+}
@@ -0,0 +1,118 @@
+package fr.leabar.zstructure.metrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ZStructureMetricsRegistry implements ZStructureMetricsListener {
+    private static final int BUCKETS = 64;
+
+    private volatile StageMetrics[] stages = createStages();
+
+    private static StageMetrics[] createStages() {
+        StageMetrics[] stages = new StageMetrics[ZStructureStage.values().length];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new StageMetrics();
+        }
+        return stages;
+    }
+
+    @Override
+    public void onStage(ZStructureStage stage, long nanos, long rawBytes, long compressedBytes, long blocks) {
+        StageMetrics metrics = stages[stage.ordinal()];
+        metrics.count.increment();
+        metrics.nanos.add(nanos);
+        metrics.rawBytes.add(rawBytes);
+        metrics.compressedBytes.add(compressedBytes);
+        metrics.blocks.add(blocks);
+        metrics.histogram.incrementAndGet(bucketOf(nanos));
+        metrics.max.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int bucketOf(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    public StageSnapshot getStage(ZStructureStage stage) {
+        StageMetrics metrics = stages[stage.ordinal()];
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = metrics.histogram.get(i);
+        }
+        return new StageSnapshot(stage, metrics.count.sum(), metrics.nanos.sum(), metrics.max.get(),
+                metrics.rawBytes.sum(), metrics.compressedBytes.sum(), metrics.blocks.sum(), histogram);
+    }
+
+    public Map<ZStructureStage, StageSnapshot> snapshot() {
+        Map<ZStructureStage, StageSnapshot> snapshot = new EnumMap<>(ZStructureStage.class);
+        for (ZStructureStage stage : ZStructureStage.values()) {
+            StageSnapshot stageSnapshot = getStage(stage);
+            if (stageSnapshot.count() > 0) {
+                snapshot.put(stage, stageSnapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    public void reset() {
+        stages = createStages();
+    }
+
+    public String exportCsv() {
+        StringBuilder builder = new StringBuilder("stage,count,total_ns,mean_ns,p50_ns,p99_ns,max_ns,raw_bytes,compressed_bytes,blocks,blocks_per_second\n");
+        for (StageSnapshot stage : snapshot().values()) {
+            builder.append(stage.stage().name().toLowerCase()).append(',')
+                    .append(stage.count()).append(',')
+                    .append(stage.totalNanos()).append(',')
+                    .append(stage.getMeanNanos()).append(',')
+                    .append(stage.getPercentileNanos(0.5)).append(',')
+                    .append(stage.getPercentileNanos(0.99)).append(',')
+                    .append(stage.maxNanos()).append(',')
+                    .append(stage.rawBytes()).append(',')
+                    .append(stage.compressedBytes()).append(',')
+                    .append(stage.blocks()).append(',')
+                    .append(String.format(Locale.ROOT, "%.1f", stage.getBlocksPerSecond())).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static class StageMetrics {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder rawBytes = new LongAdder();
+        final LongAdder compressedBytes = new LongAdder();
+        final LongAdder blocks = new LongAdder();
+        final AtomicLong max = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    }
+
+    public record StageSnapshot(ZStructureStage stage, long count, long totalNanos, long maxNanos,
+                                long rawBytes, long compressedBytes, long blocks, long[] histogram) {
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        public long getPercentileNanos(double percentile) {
+            long target = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= target && seen > 0) {
+                    return i == 0 ? 0 : Math.min(maxNanos, (1L << i) - 1);
+                }
+            }
+            return maxNanos;
+        }
+
+        public double getBlocksPerSecond() {
+            return totalNanos == 0 ? 0 : blocks * 1_000_000_000.0 / totalNanos;
+        }
+
+        public double getCompressionRatio() {
+            return compressedBytes == 0 ? 0 : (double) rawBytes / compressedBytes;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package fr.leabar.zstructure.metrics;
+
+public enum ZStructureStage {
+    LOAD_READ,
+    LOAD_DECOMPRESS,
+    LOAD_DESERIALIZE,
+    LOAD_BUILD,
+    LOAD_TOTAL,
+    SAVE_SERIALIZE,
+    SAVE_COMPRESS,
+    SAVE_WRITE,
+    SAVE_TOTAL,
+    CAPTURE_SNAPSHOT,
+    CAPTURE_ENCODE,
+    CAPTURE_MERGE,
+    CAPTURE_TOTAL,
+    PLACE
+}
@@ -0,0 +1,263 @@
+package fr.leabar.zstructure.placement;
+
+import fr.leabar.zstructure.data.ZStructureData;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+public abstract class PlacementCursor {
+    protected final ZStructureData structure;
+    protected final World world;
+    protected final int baseX, baseY, baseZ;
+    protected int x, y, z;
+
+    protected PlacementCursor(ZStructureData structure, World world, int baseX, int baseY, int baseZ) {
+        this.structure = structure;
+        this.world = world;
+        this.baseX = baseX;
+        this.baseY = baseY;
+        this.baseZ = baseZ;
+    }
+
+    public static PlacementCursor of(PlacementMode mode, ZStructureData structure, World world, int baseX, int baseY, int baseZ) {
+        return switch (mode) {
+            case CAPTURE_ORDER -> new CaptureOrder(structure, world, baseX, baseY, baseZ);
+            case CHUNK_SECTIONS -> new ChunkSections(structure, world, baseX, baseY, baseZ);
+        };
+    }
+
+    public static PlacementCursor ofCells(PlacementMode mode, ZStructureData structure, int[] cells, World world, int baseX, int baseY, int baseZ) {
+        return new Cells(mode, structure, cells, world, baseX, baseY, baseZ);
+    }
+
+    public abstract boolean next();
+
+    public abstract Block block();
+
+    public abstract boolean applyPhysics();
+
+    public int x() {
+        return x;
+    }
+
+    public int y() {
+        return y;
+    }
+
+    public int z() {
+        return z;
+    }
+
+    private static class CaptureOrder extends PlacementCursor {
+        private boolean started;
+
+        CaptureOrder(ZStructureData structure, World world, int baseX, int baseY, int baseZ) {
+            super(structure, world, baseX, baseY, baseZ);
+        }
+
+        @Override
+        public boolean next() {
+            if (!started) {
+                started = true;
+                return structure.getWidth() > 0 && structure.getHeight() > 0 && structure.getLength() > 0;
+            }
+            if (x >= structure.getWidth()) {
+                return false;
+            }
+            if (++z == structure.getLength()) {
+                z = 0;
+                if (++y == structure.getHeight()) {
+                    y = 0;
+                    x++;
+                }
+            }
+            return x < structure.getWidth();
+        }
+
+        @Override
+        public Block block() {
+            return world.getBlockAt(baseX + x, baseY + y, baseZ + z);
+        }
+
+        @Override
+        public boolean applyPhysics() {
+            return true;
+        }
+    }
+
+    private static class Cells extends PlacementCursor {
+        private final int[] cells;
+        private final int shellStart;
+        private final boolean deferPhysics;
+        private int position = -1;
+
+        Cells(PlacementMode mode, ZStructureData structure, int[] cells, World world, int baseX, int baseY, int baseZ) {
+            super(structure, world, baseX, baseY, baseZ);
+            this.deferPhysics = mode == PlacementMode.CHUNK_SECTIONS;
+            if (deferPhysics) {
+                int[] ordered = new int[cells.length];
+                int interior = 0;
+                for (int cell : cells) {
+                    decode(cell);
+                    if (!isShell()) {
+                        ordered[interior++] = cell;
+                    }
+                }
+                int shell = interior;
+                for (int cell : cells) {
+                    decode(cell);
+                    if (isShell()) {
+                        ordered[shell++] = cell;
+                    }
+                }
+                this.cells = ordered;
+                this.shellStart = interior;
+            } else {
+                this.cells = cells;
+                this.shellStart = 0;
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (++position >= cells.length) {
+                position = cells.length;
+                return false;
+            }
+            decode(cells[position]);
+            return true;
+        }
+
+        private void decode(int cell) {
+            int height = structure.getHeight();
+            int length = structure.getLength();
+            x = cell / (height * length);
+            y = (cell / length) % height;
+            z = cell % length;
+        }
+
+        private boolean isShell() {
+            return x == 0 || y == 0 || z == 0
+                    || x == structure.getWidth() - 1
+                    || y == structure.getHeight() - 1
+                    || z == structure.getLength() - 1;
+        }
+
+        @Override
+        public Block block() {
+            return world.getBlockAt(baseX + x, baseY + y, baseZ + z);
+        }
+
+        @Override
+        public boolean applyPhysics() {
+            return position >= shellStart;
+        }
+    }
+
+    private static class ChunkSections extends PlacementCursor {
+        private final int width, height, length;
+        private final int minChunkX, minChunkZ, chunksX, chunkCount;
+        private int chunkIndex = -1;
+        private int fromX, toX, fromZ, toZ;
+        private boolean shellPass;
+        private boolean exhausted;
+        private Chunk chunk;
+
+        ChunkSections(ZStructureData structure, World world, int baseX, int baseY, int baseZ) {
+            super(structure, world, baseX, baseY, baseZ);
+            this.width = structure.getWidth();
+            this.height = structure.getHeight();
+            this.length = structure.getLength();
+            this.minChunkX = baseX >> 4;
+            this.minChunkZ = baseZ >> 4;
+            this.chunksX = ((baseX + width - 1) >> 4) - minChunkX + 1;
+            int chunksZ = ((baseZ + length - 1) >> 4) - minChunkZ + 1;
+            this.chunkCount = width < 3 || height < 3 || length < 3 ? 0 : chunksX * chunksZ;
+            this.exhausted = width == 0 || height == 0 || length == 0;
+        }
+
+        @Override
+        public boolean next() {
+            if (exhausted) {
+                return false;
+            }
+            if (shellPass) {
+                return advanceOnShell();
+            }
+            if (chunkIndex >= 0 && advanceInChunk()) {
+                return true;
+            }
+            while (++chunkIndex < chunkCount) {
+                if (enterChunk()) {
+                    return true;
+                }
+            }
+            shellPass = true;
+            x = y = z = 0;
+            return true;
+        }
+
+        private boolean advanceInChunk() {
+            if (++x <= toX) {
+                return true;
+            }
+            x = fromX;
+            if (++z <= toZ) {
+                return true;
+            }
+            z = fromZ;
+            return ++y < height - 1;
+        }
+
+        private boolean enterChunk() {
+            int chunkX = minChunkX + chunkIndex % chunksX;
+            int chunkZ = minChunkZ + chunkIndex / chunksX;
+            fromX = Math.max(1, (chunkX << 4) - baseX);
+            toX = Math.min(width - 2, (chunkX << 4) + 15 - baseX);
+            fromZ = Math.max(1, (chunkZ << 4) - baseZ);
+            toZ = Math.min(length - 2, (chunkZ << 4) + 15 - baseZ);
+            if (fromX > toX || fromZ > toZ) {
+                return false;
+            }
+            chunk = world.getChunkAt(chunkX, chunkZ);
+            x = fromX;
+            y = 1;
+            z = fromZ;
+            return true;
+        }
+
+        private boolean advanceOnShell() {
+            boolean innerRow = x > 0 && x < width - 1 && y > 0 && y < height - 1;
+            if (innerRow && z == 0 && length > 1) {
+                z = length - 1;
+                return true;
+            }
+            if (++z < length) {
+                return true;
+            }
+            z = 0;
+            if (++y < height) {
+                return true;
+            }
+            y = 0;
+            if (++x < width) {
+                return true;
+            }
+            exhausted = true;
+            return false;
+        }
+
+        @Override
+        public Block block() {
+            if (shellPass) {
+                return world.getBlockAt(baseX + x, baseY + y, baseZ + z);
+            }
+            return chunk.getBlock((baseX + x) & 15, baseY + y, (baseZ + z) & 15);
+        }
+
+        @Override
+        public boolean applyPhysics() {
+            return shellPass;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package fr.leabar.zstructure.placement;
+
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructurePalette;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public class PlacementJob {
+    private final ZStructureData structure;
+    private final ZStructurePalette palette;
+    private final PlacementCursor cursor;
+    private final PlacementPriority priority;
+    private final Consumer<Double> progressCallback;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private final int totalBlocks;
+    private volatile int placedBlocks;
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+    private boolean finished;
+
+    PlacementJob(ZStructureData structure, PlacementCursor cursor, PlacementPriority priority, Consumer<Double> progressCallback) {
+        this(structure, cursor, priority, progressCallback, structure.getBlockCount());
+    }
+
+    PlacementJob(ZStructureData structure, PlacementCursor cursor, PlacementPriority priority, Consumer<Double> progressCallback, int totalBlocks) {
+        this.structure = structure;
+        this.palette = structure.getPalette();
+        this.cursor = cursor;
+        this.priority = priority;
+        this.progressCallback = progressCallback;
+        this.totalBlocks = totalBlocks;
+    }
+
+    int place(int maxCells) {
+        int placed = 0;
+        for (int visited = 0; visited < maxCells; visited++) {
+            if (!cursor.next()) {
+                finished = true;
+                break;
+            }
+            int paletteIndex = structure.getPaletteIndexAt(cursor.x(), cursor.y(), cursor.z());
+            if (paletteIndex >= 0) {
+                cursor.block().setBlockData(palette.getSharedBlockData(paletteIndex), cursor.applyPhysics());
+                placed++;
+                blockPlaced();
+            }
+        }
+        return placed;
+    }
+
+    private void blockPlaced() {
+        int placed = ++placedBlocks;
+        if (progressCallback != null && placed%100 == 0) {
+            progressCallback.accept((double) placed/totalBlocks);
+        }
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    void complete() {
+        if (progressCallback != null) {
+            progressCallback.accept(1.0);
+        }
+        future.complete(null);
+    }
+
+    void fail(Throwable throwable) {
+        future.completeExceptionally(throwable);
+    }
+
+    void cancelled() {
+        future.completeExceptionally(new CancellationException("Placement of '" + structure.getName() + "' cancelled"));
+    }
+
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    public PlacementPriority getPriority() {
+        return priority;
+    }
+
+    public ZStructureData getStructure() {
+        return structure;
+    }
+
+    public int getPlacedBlocks() {
+        return placedBlocks;
+    }
+
+    public int getTotalBlocks() {
+        return totalBlocks;
+    }
+
+    public double getProgress() {
+        return totalBlocks == 0 ? 1.0 : (double) placedBlocks/totalBlocks;
+    }
+
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+}
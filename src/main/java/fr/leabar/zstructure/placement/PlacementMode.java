@@ -0,0 +1,6 @@
+package fr.leabar.zstructure.placement;
+
+public enum PlacementMode {
+    CAPTURE_ORDER,
+    CHUNK_SECTIONS
+}
@@ -0,0 +1,17 @@
+package fr.leabar.zstructure.placement;
+
+public enum PlacementPriority {
+    LOW(1),
+    NORMAL(2),
+    HIGH(4);
+
+    private final int weight;
+
+    PlacementPriority(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
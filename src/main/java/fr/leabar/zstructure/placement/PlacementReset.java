@@ -0,0 +1,88 @@
+package fr.leabar.zstructure.placement;
+
+import fr.leabar.zstructure.data.ZStructureData;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+public class PlacementReset {
+    private final ZStructureData structure;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private volatile PlacementJob job;
+    private volatile int changedBlocks = -1;
+    private volatile boolean cancelled;
+
+    PlacementReset(ZStructureData structure) {
+        this.structure = structure;
+    }
+
+    void start(PlacementJob job, int changedBlocks) {
+        this.changedBlocks = changedBlocks;
+        this.job = job;
+        if (cancelled) {
+            job.cancel();
+        }
+        job.getFuture().whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                future.completeExceptionally(throwable);
+            } else {
+                future.complete(null);
+            }
+        });
+    }
+
+    void fail(Throwable throwable) {
+        future.completeExceptionally(throwable);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        PlacementJob current = job;
+        if (current != null) {
+            current.cancel();
+        } else {
+            future.completeExceptionally(new CancellationException("Reset of '" + structure.getName() + "' cancelled"));
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isCompared() {
+        return changedBlocks >= 0;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    public ZStructureData getStructure() {
+        return structure;
+    }
+
+    public PlacementJob getJob() {
+        return job;
+    }
+
+    public int getTotalBlocks() {
+        return structure.getBlockCount();
+    }
+
+    public int getChangedBlocks() {
+        return Math.max(0, changedBlocks);
+    }
+
+    public int getSkippedBlocks() {
+        return changedBlocks < 0 ? 0 : structure.getBlockCount() - changedBlocks;
+    }
+
+    public double getProgress() {
+        PlacementJob current = job;
+        return current == null ? 0.0 : current.getProgress();
+    }
+
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+}
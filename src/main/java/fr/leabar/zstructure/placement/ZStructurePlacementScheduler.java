@@ -0,0 +1,265 @@
+package fr.leabar.zstructure.placement;
+
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructurePalette;
+import fr.leabar.zstructure.metrics.ZStructureMetricsListener;
+import fr.leabar.zstructure.metrics.ZStructureStage;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+public class ZStructurePlacementScheduler {
+    private static final double DEFAULT_MILLIS_PER_TICK = 10.0;
+    private static final int CELLS_PER_SLICE = 64;
+
+    private final Plugin plugin;
+    private final Executor executor;
+    private final Queue<PlacementJob> pendingJobs = new ConcurrentLinkedQueue<>();
+    private final List<PlacementJob> activeJobs = new CopyOnWriteArrayList<>();
+    private volatile long budgetNanos;
+    private volatile ZStructureMetricsListener metricsListener;
+    private BukkitTask task;
+    private int nextJob;
+
+    public ZStructurePlacementScheduler(Plugin plugin) {
+        this(plugin, DEFAULT_MILLIS_PER_TICK);
+    }
+
+    public ZStructurePlacementScheduler(Plugin plugin, double millisPerTick) {
+        this(plugin, millisPerTick, ForkJoinPool.commonPool());
+    }
+
+    public ZStructurePlacementScheduler(Plugin plugin, double millisPerTick, Executor executor) {
+        this.plugin = plugin;
+        this.executor = executor;
+        this.budgetNanos = toBudgetNanos(millisPerTick);
+    }
+
+    public PlacementJob submit(ZStructureData structure, World world, Location location, PlacementPriority priority, Consumer<Double> progressCallback) {
+        return submit(structure, world, location, PlacementMode.CAPTURE_ORDER, priority, progressCallback);
+    }
+
+    public PlacementJob submit(ZStructureData structure, World world, Location location, PlacementMode mode, PlacementPriority priority, Consumer<Double> progressCallback) {
+        PlacementCursor cursor = PlacementCursor.of(mode, structure, world, location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        return enqueue(new PlacementJob(structure, cursor, priority, progressCallback));
+    }
+
+    private PlacementJob enqueue(PlacementJob job) {
+        pendingJobs.add(job);
+        ensureRunning();
+        return job;
+    }
+
+    public PlacementReset submitReset(ZStructureData structure, World world, Location location, PlacementMode mode, PlacementPriority priority, Consumer<Double> progressCallback) {
+        int baseX = location.getBlockX();
+        int baseY = location.getBlockY();
+        int baseZ = location.getBlockZ();
+        PlacementReset reset = new PlacementReset(structure);
+        snapshotOnMainThread(world, structure, baseX, baseZ).thenCompose(snapshots -> {
+            List<CompletableFuture<int[]>> tasks = new ArrayList<>(snapshots.size());
+            for (ChunkSnapshot snapshot : snapshots) {
+                tasks.add(CompletableFuture.supplyAsync(() -> diffChunk(structure, snapshot, baseX, baseY, baseZ), executor));
+            }
+            return CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+                int count = 0;
+                for (CompletableFuture<int[]> task : tasks) {
+                    count += task.join().length;
+                }
+                int[] cells = new int[count];
+                int offset = 0;
+                for (CompletableFuture<int[]> task : tasks) {
+                    int[] changed = task.join();
+                    System.arraycopy(changed, 0, cells, offset, changed.length);
+                    offset += changed.length;
+                }
+                return cells;
+            });
+        }).whenComplete((cells, throwable) -> {
+            if (throwable != null) {
+                reset.fail(throwable);
+            } else if (!reset.isCancelled()) {
+                try {
+                    PlacementCursor cursor = PlacementCursor.ofCells(mode, structure, cells, world, baseX, baseY, baseZ);
+                    reset.start(enqueue(new PlacementJob(structure, cursor, priority, progressCallback, cells.length)), cells.length);
+                } catch (RuntimeException e) {
+                    reset.fail(e);
+                }
+            }
+        });
+        return reset;
+    }
+
+    private CompletableFuture<List<ChunkSnapshot>> snapshotOnMainThread(World world, ZStructureData structure, int baseX, int baseZ) {
+        if (Bukkit.isPrimaryThread()) {
+            try {
+                return CompletableFuture.completedFuture(takeSnapshots(world, structure, baseX, baseZ));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<List<ChunkSnapshot>> future = new CompletableFuture<>();
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            try {
+                future.complete(takeSnapshots(world, structure, baseX, baseZ));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private List<ChunkSnapshot> takeSnapshots(World world, ZStructureData structure, int baseX, int baseZ) {
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+        if (structure.getVolume() == 0) {
+            return snapshots;
+        }
+        for (int chunkX = baseX >> 4; chunkX <= (baseX + structure.getWidth() - 1) >> 4; chunkX++) {
+            for (int chunkZ = baseZ >> 4; chunkZ <= (baseZ + structure.getLength() - 1) >> 4; chunkZ++) {
+                snapshots.add(world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false));
+            }
+        }
+        return snapshots;
+    }
+
+    private int[] diffChunk(ZStructureData structure, ChunkSnapshot snapshot, int baseX, int baseY, int baseZ) {
+        int chunkMinX = snapshot.getX() << 4;
+        int chunkMinZ = snapshot.getZ() << 4;
+        int fromX = Math.max(0, chunkMinX - baseX), toX = Math.min(structure.getWidth() - 1, chunkMinX + 15 - baseX);
+        int fromZ = Math.max(0, chunkMinZ - baseZ), toZ = Math.min(structure.getLength() - 1, chunkMinZ + 15 - baseZ);
+        ZStructurePalette palette = structure.getPalette();
+        Map<BlockData, Integer> worldIndex = new HashMap<>();
+        int[] changed = new int[64];
+        int count = 0;
+        for (int x = fromX; x <= toX; x++) {
+            for (int y = 0; y < structure.getHeight(); y++) {
+                for (int z = fromZ; z <= toZ; z++) {
+                    int paletteIndex = structure.getPaletteIndexAt(x, y, z);
+                    if (paletteIndex < 0) {
+                        continue;
+                    }
+                    BlockData current = snapshot.getBlockData(baseX + x - chunkMinX, baseY + y, baseZ + z - chunkMinZ);
+                    Integer currentIndex = worldIndex.get(current);
+                    if (currentIndex == null) {
+                        currentIndex = palette.indexOf(current.getAsString());
+                        worldIndex.put(current, currentIndex);
+                    }
+                    if (currentIndex != paletteIndex) {
+                        if (count == changed.length) {
+                            changed = Arrays.copyOf(changed, count * 2);
+                        }
+                        changed[count++] = (x * structure.getHeight() + y) * structure.getLength() + z;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(changed, count);
+    }
+
+    private synchronized void ensureRunning() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        long placed = 0;
+        PlacementJob pending;
+        while ((pending = pendingJobs.poll()) != null) {
+            activeJobs.add(pending);
+        }
+
+        boolean progressed = true;
+        while (progressed && !activeJobs.isEmpty() && System.nanoTime() < deadline) {
+            progressed = false;
+            int jobCount = activeJobs.size();
+            nextJob %= jobCount;
+            for (int i = 0; i < jobCount && System.nanoTime() < deadline; i++) {
+                PlacementJob job = activeJobs.get((nextJob + i) % jobCount);
+                if (job.isCancelled() || job.isPaused() || job.isDone()) {
+                    continue;
+                }
+                try {
+                    placed += job.place(CELLS_PER_SLICE * job.getPriority().getWeight());
+                    progressed = true;
+                    if (job.isFinished()) {
+                        job.complete();
+                    }
+                } catch (RuntimeException e) {
+                    job.fail(e);
+                }
+            }
+            nextJob++;
+            removeFinishedJobs();
+        }
+        removeFinishedJobs();
+        stopIfIdle();
+        ZStructureMetricsListener metrics = metricsListener;
+        if (metrics != null && placed > 0) {
+            metrics.onStage(ZStructureStage.PLACE, System.nanoTime() - start, 0, 0, placed);
+        }
+    }
+
+    private void removeFinishedJobs() {
+        activeJobs.removeIf(job -> {
+            if (job.isCancelled() && !job.isDone()) {
+                job.cancelled();
+            }
+            return job.isDone();
+        });
+    }
+
+    private synchronized void stopIfIdle() {
+        if (activeJobs.isEmpty() && pendingJobs.isEmpty() && task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public void cancelAll() {
+        pendingJobs.forEach(PlacementJob::cancel);
+        activeJobs.forEach(PlacementJob::cancel);
+    }
+
+    public int getActiveJobCount() {
+        return activeJobs.size() + pendingJobs.size();
+    }
+
+    public ZStructureMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    public void setMetricsListener(ZStructureMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public double getMillisPerTick() {
+        return budgetNanos / 1_000_000.0;
+    }
+
+    public void setMillisPerTick(double millisPerTick) {
+        this.budgetNanos = toBudgetNanos(millisPerTick);
+    }
+
+    private static long toBudgetNanos(double millisPerTick) {
+        return (long) (Math.max(0.1, millisPerTick) * 1_000_000);
+    }
+}
@@ -1,14 +1,21 @@
 package fr.leabar.zstructure.serializer;
 
 import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.data.ZStructureBlockStorage;
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructureDelta;
+import fr.leabar.zstructure.data.ZStructurePalette;
 import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.utils.ZStructureUtils;
 import org.bukkit.Material;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ZStructureSerializer {
-    private static final Map<String, Material> MATERIAL_CACHE = new HashMap<>();
+    private static final Map<String, Material> MATERIAL_CACHE = new ConcurrentHashMap<>();
     private static final Map<Material, Integer> MATERIAL_ID_CACHE = new HashMap<>();
     private static final List<Material> ID_TO_MATERIAL = new ArrayList<>();
 
@@ -23,9 +30,9 @@ public class ZStructureSerializer {
         try {
             BlockAnalysis analysis = analyzeBlocks(blocks);
             dos.writeByte(analysis.flags);
-            dos.writeInt(analysis.uniqueMaterials.size());
+            ZStructureUtils.writeVarInt(dos, analysis.palette.size());
 
-            writeMaterialPalette(dos, analysis.uniqueMaterials);
+            writeStatePalette(dos, analysis.palette);
 
             if ((analysis.flags & ZStructureFormat.FLAG_SPARSE) != 0) {
                 writeSparseBocks(dos, blocks, analysis);
@@ -41,54 +48,277 @@ public class ZStructureSerializer {
         }
     }
 
-    public static List<ZStructureBlock> deserializeBlocks(byte[] data) {
+    public static ZStructureData deserializeStructure(byte[] data, byte version, String name, int width, int height, int length) {
+        if (version == ZStructureFormat.VERSION_MATERIAL_PALETTE) {
+            return new ZStructureData(name, width, height, length, deserializeBlocks(data, version));
+        }
         ByteArrayInputStream bais = new ByteArrayInputStream(data);
         DataInputStream dis = new DataInputStream(bais);
 
         try {
-            byte flags = dis.readByte();
-            int paletteSize = dis.readInt();
-            List<Material> palette = readMaterialPalette(dis, paletteSize);
-            if ((flags & ZStructureFormat.FLAG_SPARSE) != 0) {
-                return readSparseBlocks(dis, palette);
+            dis.readByte();
+            int paletteSize = ZStructureUtils.readVarInt(dis);
+            ZStructurePalette palette = readStatePalette(dis, paletteSize);
+            ZStructureBlockStorage storage = new ZStructureBlockStorage(width * height * length, 32 - Integer.numberOfLeadingZeros(paletteSize));
+            int blockCount = dis.readInt();
+            for (int i = 0; i < blockCount; i++) {
+                int x = dis.readShort();
+                int y = dis.readShort();
+                int z = dis.readShort();
+                int paletteIndex = ZStructureUtils.readVarInt(dis);
+                if (x < 0 || x >= width || y < 0 || y >= height || z < 0 || z >= length || paletteIndex >= paletteSize) {
+                    throw new IOException("Block entry invalid at " + x + "," + y + "," + z);
+                }
+                storage.set((x * height + y) * length + z, paletteIndex + 1);
+            }
+            return new ZStructureData(name, width, height, length, palette, storage);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Error during the serialization of blocks.", e);
+        }
+    }
+
+    public static byte[] serializeDelta(ZStructureDelta delta) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+
+        try {
+            ZStructurePalette palette = delta.getPalette();
+            ZStructureUtils.writeVarInt(dos, palette.size());
+            writeStatePalette(dos, palette);
+            ZStructureUtils.writeVarInt(dos, delta.getChangeCount());
+            int previous = -1;
+            for (int i = 0; i < delta.getChangeCount(); i++) {
+                ZStructureUtils.writeVarInt(dos, delta.getCell(i) - previous);
+                previous = delta.getCell(i);
+            }
+            for (int i = 0; i < delta.getChangeCount(); i++) {
+                ZStructureUtils.writeVarInt(dos, delta.getValue(i));
+            }
+            dos.flush();
+            return baos.toByteArray();
+
+        } catch (IOException e) {
+            throw new RuntimeException("Error during the serialization of the delta.", e);
+        }
+    }
+
+    public static ZStructureDelta deserializeDelta(byte[] data, String name, int width, int height, int length) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        int paletteSize = ZStructureUtils.readVarInt(dis);
+        ZStructurePalette palette = readStatePalette(dis, paletteSize);
+        int changeCount = ZStructureUtils.readVarInt(dis);
+        if (changeCount < 0 || changeCount > data.length) {
+            throw new IOException("Delta change count invalid: " + changeCount);
+        }
+        int[] cells = new int[changeCount];
+        int[] values = new int[changeCount];
+        int cell = -1;
+        for (int i = 0; i < changeCount; i++) {
+            cell += ZStructureUtils.readVarInt(dis);
+            cells[i] = cell;
+        }
+        for (int i = 0; i < changeCount; i++) {
+            values[i] = ZStructureUtils.readVarInt(dis);
+        }
+        try {
+            return new ZStructureDelta(name, width, height, length, palette, cells, values);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Delta invalid: " + e.getMessage(), e);
+        }
+    }
+
+    public static EncodedSection serializeSection(ZStructureData structure, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, boolean skipAir) {
+        ZStructurePalette palette = structure.getPalette();
+        int sizeX = maxX - minX, sizeY = maxY - minY, sizeZ = maxZ - minZ;
+        int[] values = new int[sizeX * sizeY * sizeZ];
+        int blockCount = 0;
+        int cell = 0;
+        for (int x = minX; x < maxX; x++) {
+            for (int y = minY; y < maxY; y++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    int paletteIndex = structure.getPaletteIndexAt(x, y, z);
+                    if (paletteIndex >= 0 && !(skipAir && palette.isAir(paletteIndex))) {
+                        values[cell] = paletteIndex + 1;
+                        blockCount++;
+                    }
+                    cell++;
+                }
+            }
+        }
+        return serializeSection(values, blockCount);
+    }
+
+    public static EncodedSection serializeSection(int[] values, int blockCount) {
+        if (blockCount == 0) {
+            return new EncodedSection(new byte[0], 0);
+        }
+
+        long denseSize = 0;
+        long sparseSize = varIntSize(blockCount);
+        long runSize = 0;
+        int runStart = 0;
+        for (int i = 0; i < values.length; i++) {
+            int value = values[i];
+            denseSize += varIntSize(value);
+            if (value != 0) {
+                sparseSize += varIntSize(i) + varIntSize(value - 1);
+            }
+            if (i + 1 == values.length || values[i + 1] != value) {
+                runSize += varIntSize(i + 1 - runStart) + varIntSize(value);
+                runStart = i + 1;
+            }
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            if (runSize < denseSize && runSize < sparseSize) {
+                dos.writeByte(ZStructureFormat.SECTION_RUN_LENGTH);
+                runStart = 0;
+                for (int i = 0; i < values.length; i++) {
+                    if (i + 1 == values.length || values[i + 1] != values[i]) {
+                        ZStructureUtils.writeVarInt(dos, i + 1 - runStart);
+                        ZStructureUtils.writeVarInt(dos, values[i]);
+                        runStart = i + 1;
+                    }
+                }
+            } else if (denseSize < sparseSize) {
+                dos.writeByte(ZStructureFormat.SECTION_DENSE);
+                for (int value : values) {
+                    ZStructureUtils.writeVarInt(dos, value);
+                }
             } else {
-                return readRegularBlocks(dis, palette);
+                dos.writeByte(ZStructureFormat.SECTION_SPARSE);
+                ZStructureUtils.writeVarInt(dos, blockCount);
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != 0) {
+                        ZStructureUtils.writeVarInt(dos, i);
+                        ZStructureUtils.writeVarInt(dos, values[i] - 1);
+                    }
+                }
             }
+            dos.flush();
+            return new EncodedSection(baos.toByteArray(), blockCount);
 
         } catch (IOException e) {
             throw new RuntimeException("Error during the serialization of blocks.", e);
         }
     }
 
-    private static BlockAnalysis analyzeBlocks(List<ZStructureBlock> blocks) {
-        BlockAnalysis analysis = new BlockAnalysis();
-        Set<Material> materials = new HashSet<>();
-        int airBlocks = 0;
+    private static int varIntSize(int value) {
+        return value == 0 ? 1 : (38 - Integer.numberOfLeadingZeros(value)) / 7;
+    }
 
-        for (ZStructureBlock block : blocks) {
-            materials.add(block.material());
-            if (block.isAir()) {
-                airBlocks++;
+    public static void deserializeSection(ByteBuffer buffer, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int paletteSize, ZStructureData.BlockIndexConsumer consumer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+        int sizeY = maxY - minY, sizeZ = maxZ - minZ;
+        int volume = (maxX - minX) * sizeY * sizeZ;
+        byte encoding = buffer.get();
+        if (encoding == ZStructureFormat.SECTION_DENSE) {
+            for (int cell = 0; cell < volume; cell++) {
+                int value = ZStructureUtils.readVarInt(buffer);
+                if (value == 0) {
+                    continue;
+                }
+                if (value > paletteSize) {
+                    throw new IOException("Palette index invalid: " + (value - 1));
+                }
+                consumer.accept(minX + cell / (sizeY * sizeZ), minY + (cell / sizeZ) % sizeY, minZ + cell % sizeZ, value - 1);
+            }
+        } else if (encoding == ZStructureFormat.SECTION_SPARSE) {
+            int blockCount = ZStructureUtils.readVarInt(buffer);
+            for (int i = 0; i < blockCount; i++) {
+                int cell = ZStructureUtils.readVarInt(buffer);
+                int paletteIndex = ZStructureUtils.readVarInt(buffer);
+                if (cell >= volume || paletteIndex >= paletteSize) {
+                    throw new IOException("Section entry invalid: " + cell + " -> " + paletteIndex);
+                }
+                consumer.accept(minX + cell / (sizeY * sizeZ), minY + (cell / sizeZ) % sizeY, minZ + cell % sizeZ, paletteIndex);
+            }
+        } else if (encoding == ZStructureFormat.SECTION_RUN_LENGTH) {
+            int cell = 0;
+            while (cell < volume) {
+                int run = ZStructureUtils.readVarInt(buffer);
+                int value = ZStructureUtils.readVarInt(buffer);
+                if (run <= 0 || run > volume - cell || value > paletteSize) {
+                    throw new IOException("Section run invalid: " + run + " x " + value);
+                }
+                if (value == 0) {
+                    cell += run;
+                    continue;
+                }
+                for (int end = cell + run; cell < end; cell++) {
+                    consumer.accept(minX + cell / (sizeY * sizeZ), minY + (cell / sizeZ) % sizeY, minZ + cell % sizeZ, value - 1);
+                }
             }
+        } else {
+            throw new IOException("Section encoding unknown: " + encoding);
         }
+    }
+
+    public static List<ZStructureBlock> deserializeBlocks(byte[] data) {
+        return deserializeBlocks(data, ZStructureFormat.FORMAT_VERSION);
+    }
+
+    public static List<ZStructureBlock> deserializeBlocks(byte[] data, byte version) {
+        ByteArrayInputStream bais = new ByteArrayInputStream(data);
+        DataInputStream dis = new DataInputStream(bais);
 
-        analysis.uniqueMaterials = new ArrayList<>(materials);
-        double airRatio = (double) airBlocks/blocks.size();
-        if (airRatio > 0.3) {
-            analysis.flags |= ZStructureFormat.FLAG_SPARSE;
+        try {
+            if (version == ZStructureFormat.VERSION_MATERIAL_PALETTE) {
+                return deserializeLegacyBlocks(dis);
+            }
+            dis.readByte();
+            int paletteSize = ZStructureUtils.readVarInt(dis);
+            ZStructurePalette palette = readStatePalette(dis, paletteSize);
+            return readPaletteBlocks(dis, palette);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Error during the serialization of blocks.", e);
         }
+    }
 
-        if (materials.size() < 10) {
-            analysis.flags |= ZStructureFormat.FLAG_UNIFORM;
+    private static List<ZStructureBlock> deserializeLegacyBlocks(DataInputStream dis) throws IOException {
+        byte flags = dis.readByte();
+        int paletteSize = dis.readInt();
+        List<Material> palette = readMaterialPalette(dis, paletteSize);
+        if ((flags & ZStructureFormat.FLAG_SPARSE) != 0) {
+            return readLegacySparseBlocks(dis, palette);
+        } else {
+            return readLegacyRegularBlocks(dis, palette);
         }
+    }
 
+    private static BlockAnalysis analyzeBlocks(List<ZStructureBlock> blocks) {
+        BlockAnalysis analysis = new BlockAnalysis();
+        analysis.paletteIndices = new int[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            ZStructureBlock block = blocks.get(i);
+            analysis.paletteIndices[i] = analysis.palette.getOrAdd(block.blockDataString(), block.material());
+            if (!block.isAir()) {
+                analysis.nonAirCount++;
+            }
+        }
+        analysis.flags = ZStructureFormat.calculateFlags(analysis.nonAirCount, blocks.size(), analysis.palette.size());
         return analysis;
     }
 
-    private static void writeMaterialPalette(DataOutputStream dos, List<Material> materials) throws IOException {
-        for (Material material : materials) {
-            dos.writeUTF(material.name());
+    private static void writeStatePalette(DataOutputStream dos, ZStructurePalette palette) throws IOException {
+        for (int i = 0; i < palette.size(); i++) {
+            dos.writeUTF(palette.getState(i));
+        }
+    }
+
+    private static ZStructurePalette readStatePalette(DataInputStream dis, int size) throws IOException {
+        ZStructurePalette palette = new ZStructurePalette(size);
+        for (int i = 0; i < size; i++) {
+            String state = dis.readUTF();
+            palette.add(state, ZStructurePalette.materialOf(state));
         }
+        return palette;
     }
 
     private static List<Material> readMaterialPalette(DataInputStream dis, int size) throws IOException {
@@ -102,33 +332,49 @@ public class ZStructureSerializer {
     }
 
     private static void writeSparseBocks(DataOutputStream dos, List<ZStructureBlock> blocks, BlockAnalysis analysis) throws IOException {
-        List<ZStructureBlock> nonAirBlocks = blocks.stream()
-                .filter(block -> !block.isAir())
-                .toList();
-
-        dos.writeInt(nonAirBlocks.size());
-        for (ZStructureBlock block : nonAirBlocks) {
+        dos.writeInt(analysis.nonAirCount);
+        for (int i = 0; i < blocks.size(); i++) {
+            ZStructureBlock block = blocks.get(i);
+            if (block.isAir()) {
+                continue;
+            }
             dos.writeShort(block.x());
             dos.writeShort(block.y());
             dos.writeShort(block.z());
-            dos.writeByte(analysis.uniqueMaterials.indexOf(block.material()));
-            dos.writeUTF(block.blockDataString());
+            ZStructureUtils.writeVarInt(dos, analysis.paletteIndices[i]);
         }
     }
 
     private static void writeRegularBlocks(DataOutputStream dos, List<ZStructureBlock> blocks, BlockAnalysis analysis) throws IOException {
         dos.writeInt(blocks.size());
-        for (ZStructureBlock block : blocks) {
+        for (int i = 0; i < blocks.size(); i++) {
+            ZStructureBlock block = blocks.get(i);
             dos.writeShort(block.x());
             dos.writeShort(block.y());
             dos.writeShort(block.z());
-            dos.writeByte(analysis.uniqueMaterials.indexOf(block.material()));
-            dos.writeUTF(block.blockDataString());
+            ZStructureUtils.writeVarInt(dos, analysis.paletteIndices[i]);
         }
     }
 
 
-    private static List<ZStructureBlock> readSparseBlocks(DataInputStream dis, List<Material> palette) throws IOException {
+    private static List<ZStructureBlock> readPaletteBlocks(DataInputStream dis, ZStructurePalette palette) throws IOException {
+        int blockCount = dis.readInt();
+        List<ZStructureBlock> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            int x = dis.readShort();
+            int y = dis.readShort();
+            int z = dis.readShort();
+            int paletteIndex = ZStructureUtils.readVarInt(dis);
+            if (paletteIndex < 0 || paletteIndex >= palette.size()) {
+                throw new IOException("Palette index invalid: " + paletteIndex);
+            }
+            blocks.add(new ZStructureBlock(x, y, z, palette.getMaterial(paletteIndex), palette.getState(paletteIndex)));
+        }
+        return blocks;
+    }
+
+
+    private static List<ZStructureBlock> readLegacySparseBlocks(DataInputStream dis, List<Material> palette) throws IOException {
         int blockCount = dis.readInt();
         List<ZStructureBlock> blocks = new ArrayList<>(blockCount);
 
@@ -136,7 +382,7 @@ public class ZStructureSerializer {
             int x = dis.readShort();
             int y = dis.readShort();
             int z = dis.readShort();
-            Material material = palette.get(dis.readByte() & 0xFF);
+            Material material = materialAt(palette, dis.readByte() & 0xFF);
             String blockData = dis.readUTF();
 
             blocks.add(new ZStructureBlock(x, y, z, material, blockData));
@@ -146,20 +392,27 @@ public class ZStructureSerializer {
     }
 
 
-    private static List<ZStructureBlock> readRegularBlocks(DataInputStream dis, List<Material> palette) throws IOException {
+    private static List<ZStructureBlock> readLegacyRegularBlocks(DataInputStream dis, List<Material> palette) throws IOException {
         int blockCount = dis.readInt();
         List<ZStructureBlock> blocks = new ArrayList<>(blockCount);
         for (int i = 0; i < blockCount; i++) {
             int x = dis.readShort();
             int y = dis.readShort();
             int z = dis.readShort();
-            Material material = palette.get(dis.readByte() & 0xFF);
+            Material material = materialAt(palette, dis.readByte() & 0xFF);
             String blockData = dis.readUTF();
             blocks.add(new ZStructureBlock(x, y, z, material, blockData));
         }
         return blocks;
     }
 
+    private static Material materialAt(List<Material> palette, int index) throws IOException {
+        if (index >= palette.size()) {
+            throw new IOException("Palette index invalid: " + index);
+        }
+        return palette.get(index);
+    }
+
     private static void initializeMaterialCache() {
         String[] commonMaterials = {
                 "AIR", "STONE", "DIRT", "GRASS_BLOCK", "COBBLESTONE", "OAK_PLANKS",
@@ -177,8 +430,13 @@ public class ZStructureSerializer {
         }
     }
 
+    public record EncodedSection(byte[] data, int blockCount) {
+    }
+
     private static class BlockAnalysis {
         byte flags = 0;
-        List<Material> uniqueMaterials = new ArrayList<>();
+        ZStructurePalette palette = new ZStructurePalette();
+        int[] paletteIndices;
+        int nonAirCount;
     }
 }
\ No newline at end of file
@@ -1,19 +1,143 @@
 package fr.leabar.zstructure.utils;
 
 import com.github.luben.zstd.Zstd;
-
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class ZStructureUtils {
+    private static final int CONTEXT_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int MAX_POOLED_BUFFER = 1 << 22;
+    private static final BlockingQueue<Compressor> COMPRESSORS = new ArrayBlockingQueue<>(CONTEXT_POOL_SIZE);
+    private static final BlockingQueue<ZstdDecompressCtx> DECOMPRESSORS = new ArrayBlockingQueue<>(CONTEXT_POOL_SIZE);
 
     public static byte[] compress(byte[] data, int level) {
-        return Zstd.compress(data, level);
+        return compress(data, level, null);
+    }
+
+    public static byte[] compress(byte[] data, ZstdDictCompress dictionary) {
+        return compress(data, 0, dictionary);
+    }
+
+    private static byte[] compress(byte[] data, int level, ZstdDictCompress dictionary) {
+        Compressor compressor = COMPRESSORS.poll();
+        if (compressor == null) {
+            compressor = new Compressor();
+        }
+        try {
+            ZstdCompressCtx context = compressor.context;
+            context.reset();
+            if (dictionary != null) {
+                context.loadDict(dictionary);
+            } else {
+                context.setLevel(level);
+            }
+            int bound = (int) Zstd.compressBound(data.length);
+            if (compressor.buffer.length < bound) {
+                compressor.buffer = new byte[bound];
+            }
+            int size = context.compressByteArray(compressor.buffer, 0, bound, data, 0, data.length);
+            return Arrays.copyOf(compressor.buffer, size);
+        } finally {
+            if (compressor.buffer.length > MAX_POOLED_BUFFER) {
+                compressor.buffer = new byte[0];
+            }
+            if (!COMPRESSORS.offer(compressor)) {
+                compressor.context.close();
+            }
+        }
+    }
+
+    public static byte[] decompress(byte[] compressedData, int originalSize) throws IOException {
+        return decompress(compressedData, 0, compressedData.length, originalSize, null);
+    }
+
+    public static byte[] decompress(byte[] compressedData) throws IOException {
+        return decompress(compressedData, (ZstdDictDecompress) null);
+    }
+
+    public static byte[] decompress(byte[] compressedData, ZstdDictDecompress dictionary) throws IOException {
+        long contentSize = Zstd.getFrameContentSize(compressedData);
+        if (contentSize < 0 || contentSize > Integer.MAX_VALUE) {
+            throw new IOException("Zstd frame content size unavailable: " + contentSize);
+        }
+        return decompress(compressedData, 0, compressedData.length, (int) contentSize, dictionary);
+    }
+
+    public static byte[] decompress(byte[] source, int offset, int length, int originalSize) throws IOException {
+        return decompress(source, offset, length, originalSize, null);
+    }
+
+    public static byte[] decompress(byte[] source, int offset, int length, int originalSize, ZstdDictDecompress dictionary) throws IOException {
+        byte[] result = new byte[originalSize];
+        decompressInto(source, offset, length, result, originalSize, dictionary);
+        return result;
     }
 
-    public static byte[] decompress(byte[] compressedData, int originalSize) {
-        return Zstd.decompress(compressedData, originalSize);
+    public static void decompressInto(byte[] source, int offset, int length, byte[] destination, int originalSize) throws IOException {
+        decompressInto(source, offset, length, destination, originalSize, null);
+    }
+
+    public static void decompressInto(byte[] source, int offset, int length, byte[] destination, int originalSize, ZstdDictDecompress dictionary) throws IOException {
+        ZstdDecompressCtx context = acquireDecompressor(dictionary);
+        try {
+            checkSize(context.decompressByteArray(destination, 0, originalSize, source, offset, length), originalSize);
+        } catch (ZstdException e) {
+            throw new IOException("Zstd decompression failed: " + e.getMessage(), e);
+        } finally {
+            releaseDecompressor(context);
+        }
+    }
+
+    public static void decompress(ByteBuffer source, int offset, int length, ByteBuffer destination, int originalSize) throws IOException {
+        decompress(source, offset, length, destination, originalSize, null);
+    }
+
+    public static void decompress(ByteBuffer source, int offset, int length, ByteBuffer destination, int originalSize, ZstdDictDecompress dictionary) throws IOException {
+        ZstdDecompressCtx context = acquireDecompressor(dictionary);
+        try {
+            checkSize(context.decompressDirectByteBuffer(destination, 0, originalSize, source, offset, length), originalSize);
+        } catch (ZstdException e) {
+            throw new IOException("Zstd decompression failed: " + e.getMessage(), e);
+        } finally {
+            releaseDecompressor(context);
+        }
+    }
+
+    private static ZstdDecompressCtx acquireDecompressor(ZstdDictDecompress dictionary) {
+        ZstdDecompressCtx context = DECOMPRESSORS.poll();
+        if (context == null) {
+            context = new ZstdDecompressCtx();
+        }
+        context.reset();
+        if (dictionary != null) {
+            context.loadDict(dictionary);
+        }
+        return context;
+    }
+
+    private static void releaseDecompressor(ZstdDecompressCtx context) {
+        if (!DECOMPRESSORS.offer(context)) {
+            context.close();
+        }
+    }
+
+    private static void checkSize(int size, int originalSize) throws IOException {
+        if (size != originalSize) {
+            throw new IOException("Zstd frame size mismatch: expected " + originalSize + ", got " + size);
+        }
     }
 
     public static void writeInt(ByteBuffer buffer, int value) {
@@ -38,6 +162,46 @@ public class ZStructureUtils {
     }
 
 
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift >= 35) {
+                throw new IOException("VarInt too long");
+            }
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+
+    public static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift >= 35) {
+                throw new IOException("VarInt too long");
+            }
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+
     public static void writeString(ByteBuffer buffer, String str) {
         byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
         buffer.putShort((short) bytes.length);
@@ -65,4 +229,13 @@ public class ZStructureUtils {
     public static ByteBuffer wrapBuffer(byte[] data) {
         return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
     }
+
+    public static ByteBuffer wrapBuffer(byte[] data, int length) {
+        return ByteBuffer.wrap(data, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static final class Compressor {
+        private final ZstdCompressCtx context = new ZstdCompressCtx();
+        private byte[] buffer = new byte[0];
+    }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package fr.leabar.zstructure;
+
+import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructurePalette;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public final class TestStructures {
+    public static final String[] STATES = {
+            "minecraft:air", "minecraft:stone", "minecraft:dirt", "minecraft:oak_log[axis=y]", "minecraft:oak_log[axis=x]", "minecraft:glass"
+    };
+
+    private TestStructures() {}
+
+    public static List<ZStructureBlock> randomBlocks(int width, int height, int length, long seed) {
+        Random random = new Random(seed);
+        List<ZStructureBlock> blocks = new ArrayList<>(width * height * length);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    blocks.add(block(x, y, z, STATES[random.nextInt(STATES.length)]));
+                }
+            }
+        }
+        return blocks;
+    }
+
+    public static ZStructureData random(String name, int width, int height, int length, long seed) {
+        return new ZStructureData(name, width, height, length, randomBlocks(width, height, length, seed));
+    }
+
+    public static ZStructureData layered(String name, int width, int height, int length) {
+        List<ZStructureBlock> blocks = new ArrayList<>(width * height * length);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    blocks.add(block(x, y, z, STATES[1 + y%(STATES.length - 1)]));
+                }
+            }
+        }
+        return new ZStructureData(name, width, height, length, blocks);
+    }
+
+    public static ZStructureBlock block(int x, int y, int z, String state) {
+        return new ZStructureBlock(x, y, z, ZStructurePalette.materialOf(state), state);
+    }
+}
@@ -0,0 +1,45 @@
+package fr.leabar.zstructure.batch;
+
+import fr.leabar.zstructure.io.ZStructureSectionExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructureBatchExecutorTest {
+
+    @Test
+    void everyFileLandsInExactlyOneMap() throws Exception {
+        List<File> files = List.of(new File("ok.zstruct"), new File("io.zstruct"), new File("error.zstruct"));
+        ZStructureBatchExecutor executor = new ZStructureBatchExecutor(2);
+        ZStructureBatchResult<String> result = executor.submit(files, file -> switch (file.getName()) {
+            case "io.zstruct" -> throw new IOException("unreadable");
+            case "error.zstruct" -> throw new StackOverflowError();
+            default -> file.getName();
+        }, null).get();
+        executor.shutdown();
+
+        assertEquals(List.of(files.get(0)), List.copyOf(result.results().keySet()));
+        assertEquals(List.of(files.get(1), files.get(2)), List.copyOf(result.failures().keySet()));
+        assertInstanceOf(IOException.class, result.failures().get(files.get(1)));
+        assertInstanceOf(StackOverflowError.class, result.failures().get(files.get(2)).getCause());
+    }
+
+    @Test
+    void computationsRunOnTheSectionPool() throws Exception {
+        ZStructureSectionExecutor sectionExecutor = new ZStructureSectionExecutor(2);
+        ZStructureBatchExecutor executor = new ZStructureBatchExecutor(sectionExecutor);
+        ZStructureBatchResult<Boolean> result = executor.submit(List.of(new File("a.zstruct"), new File("b.zstruct")),
+                file -> executor.compute(() -> !Thread.currentThread().isVirtual()), null).get();
+        assertEquals(2, result.getSuccessCount());
+        assertTrue(result.results().values().stream().allMatch(Boolean::booleanValue));
+
+        executor.shutdown();
+        assertFalse(sectionExecutor.isShutdown());
+        sectionExecutor.shutdown();
+        assertThrows(IllegalStateException.class, () -> executor.compute(() -> 1));
+    }
+}
@@ -0,0 +1,171 @@
+package fr.leabar.zstructure.data;
+
+import fr.leabar.zstructure.TestStructures;
+import org.bukkit.block.structure.Mirror;
+import org.bukkit.block.structure.StructureRotation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructureDataViewTest {
+    private final ZStructureData structure = TestStructures.random("views", 7, 4, 11, 7);
+
+    @Test
+    void rotationsRemapCoordinates() {
+        int width = structure.getWidth(), height = structure.getHeight(), length = structure.getLength();
+        ZStructureData clockwise = structure.rotate(StructureRotation.CLOCKWISE_90);
+        ZStructureData half = structure.rotate(StructureRotation.CLOCKWISE_180);
+        ZStructureData counterClockwise = structure.rotate(StructureRotation.COUNTERCLOCKWISE_90);
+        assertEquals(length, clockwise.getWidth());
+        assertEquals(width, clockwise.getLength());
+        assertEquals(width, half.getWidth());
+        assertEquals(length, counterClockwise.getWidth());
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    int expected = structure.getPaletteIndexAt(x, y, z);
+                    assertEquals(expected, clockwise.getPaletteIndexAt(length - 1 - z, y, x));
+                    assertEquals(expected, half.getPaletteIndexAt(width - 1 - x, y, length - 1 - z));
+                    assertEquals(expected, counterClockwise.getPaletteIndexAt(z, y, width - 1 - x));
+                }
+            }
+        }
+    }
+
+    @Test
+    void opposedRotationsCancelOut() {
+        ZStructureData back = structure.rotate(StructureRotation.CLOCKWISE_90).rotate(StructureRotation.COUNTERCLOCKWISE_90);
+        assertDimensions(structure, back);
+        assertSameCells(structure, back);
+        assertSameCells(structure, structure.rotate(StructureRotation.CLOCKWISE_180).rotate(StructureRotation.CLOCKWISE_180));
+    }
+
+    @Test
+    void mirrorsFlipOneAxis() {
+        ZStructureData leftRight = structure.mirror(Mirror.LEFT_RIGHT);
+        ZStructureData frontBack = structure.mirror(Mirror.FRONT_BACK);
+        int width = structure.getWidth(), length = structure.getLength();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < structure.getHeight(); y++) {
+                for (int z = 0; z < length; z++) {
+                    int expected = structure.getPaletteIndexAt(x, y, z);
+                    assertEquals(expected, leftRight.getPaletteIndexAt(x, y, length - 1 - z));
+                    assertEquals(expected, frontBack.getPaletteIndexAt(width - 1 - x, y, z));
+                }
+            }
+        }
+        assertSameCells(structure, leftRight.mirror(Mirror.LEFT_RIGHT));
+    }
+
+    @Test
+    void viewsKeepBlockCountsAndIterateEveryCell() {
+        ZStructureData view = structure.rotate(StructureRotation.CLOCKWISE_90).mirror(Mirror.FRONT_BACK);
+        assertTrue(view.isView());
+        assertEquals(structure.getBlockCount(), view.getBlockCount());
+        int[] visited = new int[1];
+        view.forEachBlockIndex((x, y, z, paletteIndex) -> {
+            assertEquals(view.getPaletteIndexAt(x, y, z), paletteIndex);
+            visited[0]++;
+        });
+        assertEquals(structure.getBlockCount(), visited[0]);
+    }
+
+    @Test
+    void subRegionOfRotatedView() {
+        ZStructureData rotated = structure.rotate(StructureRotation.CLOCKWISE_90);
+        ZStructureData sub = rotated.subRegion(2, 1, 3, 5, 2, 6);
+        assertEquals(4, sub.getWidth());
+        assertEquals(2, sub.getHeight());
+        assertEquals(4, sub.getLength());
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 2; y++) {
+                for (int z = 0; z < 4; z++) {
+                    assertEquals(rotated.getPaletteIndexAt(x + 2, y + 1, z + 3), sub.getPaletteIndexAt(x, y, z));
+                }
+            }
+        }
+        int[] visited = new int[1];
+        sub.forEachBlockIndex((x, y, z, paletteIndex) -> visited[0]++);
+        assertEquals(visited[0], sub.getBlockCount());
+    }
+
+    @Test
+    void subRegionIsClampedAndRejectsEmptyRegions() {
+        ZStructureData sub = structure.subRegion(-5, -5, -5, 2, 100, 3);
+        assertEquals(3, sub.getWidth());
+        assertEquals(structure.getHeight(), sub.getHeight());
+        assertEquals(4, sub.getLength());
+        assertThrows(IllegalArgumentException.class, () -> structure.subRegion(50, 0, 0, 60, 1, 1));
+    }
+
+    @Test
+    void translateGrowsWithoutDroppingBlocks() {
+        ZStructureData sub = structure.subRegion(1, 1, 1, 4, 3, 5);
+        ZStructureData moved = sub.translate(2, 0, 3);
+        assertEquals(sub.getWidth() + 2, moved.getWidth());
+        assertEquals(sub.getHeight(), moved.getHeight());
+        assertEquals(sub.getLength() + 3, moved.getLength());
+        assertEquals(sub.getBlockCount(), moved.getBlockCount());
+        assertEquals(-1, moved.getPaletteIndexAt(0, 0, 0));
+        assertEquals(-1, moved.getPaletteIndexAt(1, 0, 2));
+        List<ZStructureBlock> expected = new ArrayList<>();
+        sub.forEachBlock(block -> expected.add(new ZStructureBlock(block.x() + 2, block.y(), block.z() + 3, block.material(), block.blockDataString())));
+        assertEquals(expected, moved.getBlocks());
+    }
+
+    @Test
+    void negativeTranslationShiftsTheOrigin() {
+        ZStructureData sub = structure.subRegion(1, 0, 2, 5, 3, 9);
+        ZStructureData moved = sub.translate(-2, 0, -3);
+        assertEquals(sub.getWidth() - 2, moved.getWidth());
+        assertEquals(sub.getLength() - 3, moved.getLength());
+        List<ZStructureBlock> expected = new ArrayList<>();
+        sub.forEachBlockInRegion(2, 0, 3, sub.getWidth() - 1, sub.getHeight() - 1, sub.getLength() - 1, block ->
+                expected.add(new ZStructureBlock(block.x() - 2, block.y(), block.z() - 3, block.material(), block.blockDataString())));
+        assertEquals(expected, moved.getBlocks());
+        assertEquals(expected.size(), moved.getBlockCount());
+        assertEquals(sub.getPaletteIndexAt(3, 1, 4), moved.translate(1, 0, 0).getPaletteIndexAt(2, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> sub.translate(-sub.getWidth(), 0, 0));
+    }
+
+    @Test
+    void viewsShareThePaletteWhenNotRotated() {
+        ZStructureData sub = structure.subRegion(0, 0, 0, 3, 3, 3);
+        assertSame(structure.getPalette(), sub.getPalette());
+        assertSame(structure.getPalette(), sub.translate(1, 1, 1).getPalette());
+    }
+
+    @Test
+    void regionQueriesOnViews() {
+        ZStructureData view = structure.mirror(Mirror.LEFT_RIGHT);
+        List<String> expected = new ArrayList<>();
+        view.forEachBlockIndex((x, y, z, paletteIndex) -> {
+            if (x >= 1 && x <= 3 && y <= 2 && z >= 4 && z <= 9) {
+                expected.add(x + "," + y + "," + z + "=" + paletteIndex);
+            }
+        });
+        List<String> actual = new ArrayList<>();
+        view.forEachBlockIndexInRegion(1, 0, 4, 3, 2, 9, (x, y, z, paletteIndex) -> actual.add(x + "," + y + "," + z + "=" + paletteIndex));
+        assertEquals(expected.size(), actual.size());
+        assertTrue(actual.containsAll(expected));
+    }
+
+    private static void assertDimensions(ZStructureData expected, ZStructureData actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getLength(), actual.getLength());
+    }
+
+    private static void assertSameCells(ZStructureData expected, ZStructureData actual) {
+        for (int x = 0; x < expected.getWidth(); x++) {
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int z = 0; z < expected.getLength(); z++) {
+                    assertEquals(expected.getPaletteIndexAt(x, y, z), actual.getPaletteIndexAt(x, y, z));
+                }
+            }
+        }
+    }
+}
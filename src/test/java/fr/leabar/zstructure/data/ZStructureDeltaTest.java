@@ -0,0 +1,86 @@
+package fr.leabar.zstructure.data;
+
+import fr.leabar.zstructure.TestStructures;
+import fr.leabar.zstructure.io.ZStructureReader;
+import fr.leabar.zstructure.io.ZStructureWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructureDeltaTest {
+    @TempDir
+    Path directory;
+
+    private final List<ZStructureBlock> baseBlocks = TestStructures.randomBlocks(9, 6, 13, 3);
+    private final ZStructureData base = new ZStructureData("base", 9, 6, 13, baseBlocks);
+
+    @Test
+    void identicalStructuresProduceAnEmptyDelta() {
+        ZStructureDelta delta = ZStructureDelta.between(base, base.clone("copy"));
+        assertTrue(delta.isEmpty());
+        assertEquals(base.getBlocks(), delta.applyTo(base).getBlocks());
+    }
+
+    @Test
+    void applyRestoresTheTarget() {
+        ZStructureData target = variant();
+        ZStructureDelta delta = ZStructureDelta.between(base, target);
+        assertFalse(delta.isEmpty());
+        assertTrue(delta.getChangeCount() < base.getVolume());
+        assertEquals(target.getBlocks(), delta.applyTo(base).getBlocks());
+    }
+
+    @Test
+    void deltaWithRemovedBlocksAndNewStates() {
+        List<ZStructureBlock> blocks = new ArrayList<>();
+        for (ZStructureBlock block : baseBlocks) {
+            if (block.x() == 4) {
+                blocks.add(TestStructures.block(block.x(), block.y(), block.z(), "minecraft:oak_log[axis=z]"));
+            } else if (block.z()%5 != 0) {
+                blocks.add(block);
+            }
+        }
+        ZStructureData target = new ZStructureData("sparse", 9, 6, 13, blocks);
+        ZStructureData restored = ZStructureDelta.between(base, target).applyTo(base);
+        assertEquals(target.getBlocks(), restored.getBlocks());
+        assertEquals(target.getBlockCount(), restored.getBlockCount());
+    }
+
+    @Test
+    void deltaFileRoundTrip() throws IOException {
+        ZStructureData target = variant();
+        ZStructureDelta delta = ZStructureDelta.between(base, target);
+        File file = directory.resolve("variant.zdelta").toFile();
+        new ZStructureWriter().writeDelta(delta, file);
+        ZStructureDelta read = new ZStructureReader().readDelta(file);
+        assertEquals(delta.getChangeCount(), read.getChangeCount());
+        assertEquals(delta.getPalette().getStates(), read.getPalette().getStates());
+        for (int i = 0; i < delta.getChangeCount(); i++) {
+            assertEquals(delta.getCell(i), read.getCell(i));
+            assertEquals(delta.getValue(i), read.getValue(i));
+        }
+        assertEquals(target.getBlocks(), read.applyTo(base).getBlocks());
+    }
+
+    @Test
+    void dimensionsMustMatch() {
+        ZStructureData other = TestStructures.random("other", 9, 6, 12, 3);
+        assertThrows(IllegalArgumentException.class, () -> ZStructureDelta.between(base, other));
+    }
+
+    private ZStructureData variant() {
+        List<ZStructureBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < baseBlocks.size(); i++) {
+            ZStructureBlock block = baseBlocks.get(i);
+            blocks.add(i%7 == 0 ? TestStructures.block(block.x(), block.y(), block.z(), "minecraft:dirt") : block);
+        }
+        return new ZStructureData("variant", 9, 6, 13, blocks);
+    }
+}
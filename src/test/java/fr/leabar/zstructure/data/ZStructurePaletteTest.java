@@ -0,0 +1,44 @@
+package fr.leabar.zstructure.data;
+
+import fr.leabar.zstructure.TestStructures;
+import fr.leabar.zstructure.io.ZStructureReader;
+import fr.leabar.zstructure.io.ZStructureWriter;
+import org.bukkit.Material;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructurePaletteTest {
+
+    @Test
+    void duplicateStatesKeepTheirIndices() throws IOException {
+        ZStructurePalette palette = new ZStructurePalette();
+        assertEquals(0, palette.add("minecraft:stone", Material.STONE));
+        assertEquals(1, palette.add("minecraft:dirt", Material.DIRT));
+        assertEquals(2, palette.add("minecraft:stone", Material.STONE));
+        assertEquals(0, palette.indexOf("minecraft:stone"));
+        assertEquals(0, palette.getOrAdd("minecraft:stone"));
+        assertEquals(3, palette.size());
+
+        ZStructureBlockStorage storage = new ZStructureBlockStorage(2 * 2 * 2);
+        for (int cell = 0; cell < storage.size(); cell++) {
+            storage.set(cell, 1 + cell%3);
+        }
+        ZStructureData data = new ZStructureData("duplicates", 2, 2, 2, palette, storage);
+        assertEquals(2, data.getPaletteIndexAt(0, 1, 0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ZStructureWriter().write(data, out);
+        ZStructureData read = new ZStructureReader().read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(data.getBlocks(), read.getBlocks());
+        assertEquals(2, read.getPaletteIndexAt(0, 1, 0));
+
+        ZStructureData target = TestStructures.layered("target", 2, 2, 2);
+        assertEquals(target.getBlocks(), ZStructureDelta.between(data, target).applyTo(data).getBlocks());
+        assertTrue(ZStructureDelta.between(data, read).isEmpty());
+    }
+}
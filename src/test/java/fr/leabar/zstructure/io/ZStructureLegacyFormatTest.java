@@ -0,0 +1,119 @@
+package fr.leabar.zstructure.io;
+
+import fr.leabar.zstructure.TestStructures;
+import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.serializer.ZStructureSerializer;
+import fr.leabar.zstructure.utils.ZStructureUtils;
+import org.bukkit.Material;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructureLegacyFormatTest {
+    private static final int WIDTH = 6, HEIGHT = 5, LENGTH = 9;
+
+    @TempDir
+    Path directory;
+
+    private final List<ZStructureBlock> blocks = TestStructures.randomBlocks(WIDTH, HEIGHT, LENGTH, 11);
+
+    @Test
+    void readsVersionOneFiles() throws IOException {
+        File file = writeLegacy("v1.zstruct", ZStructureFormat.VERSION_MATERIAL_PALETTE, encodeMaterialPalette(blocks));
+        assertUpgrades(file);
+    }
+
+    @Test
+    void readsVersionTwoFiles() throws IOException {
+        File file = writeLegacy("v2.zstruct", ZStructureFormat.VERSION_STATE_PALETTE, ZStructureSerializer.serializeBlocks(blocks));
+        assertUpgrades(file);
+    }
+
+    @Test
+    void legacyMetadataFallsBackToFrameContentSize() throws IOException {
+        byte[] payload = ZStructureSerializer.serializeBlocks(blocks);
+        File file = writeLegacy("v2.zstruct", ZStructureFormat.VERSION_STATE_PALETTE, payload);
+        ZStructureReader reader = new ZStructureReader();
+        assertEquals(payload.length, reader.readMetadata(file).getRawSize());
+        assertEquals(payload.length, reader.readMetadata(ByteBuffer.wrap(Files.readAllBytes(file.toPath()))).getRawSize());
+    }
+
+    private void assertUpgrades(File legacy) throws IOException {
+        ZStructureReader reader = new ZStructureReader();
+        ZStructureData data = reader.read(legacy);
+        assertEquals("legacy", data.getName());
+        assertEquals(blocks, data.getBlocks());
+
+        File upgraded = directory.resolve("upgraded.zstruct").toFile();
+        new ZStructureWriter().write(data, upgraded);
+        assertEquals(ZStructureFormat.FORMAT_VERSION, Files.readAllBytes(upgraded.toPath())[4]);
+        assertEquals(blocks, reader.read(upgraded).getBlocks());
+        assertEquals(blocks, reader.read(ByteBuffer.wrap(Files.readAllBytes(upgraded.toPath()))).getBlocks());
+    }
+
+    private File writeLegacy(String fileName, byte version, byte[] payload) throws IOException {
+        byte[] compressed = ZStructureUtils.compress(payload, ZStructureFormat.COMPRESSION_LEVEL_DEFAULT);
+        byte[] name = "legacy".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(ZStructureFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ZStructureFormat.MAGIC_NUMBER);
+        header.put(version);
+        header.put((byte) 0);
+        header.putShort((short) 0);
+        header.putInt(WIDTH);
+        header.putInt(HEIGHT);
+        header.putInt(LENGTH);
+        header.putInt(blocks.size());
+        header.putLong(1_700_000_000_000L);
+        header.putInt(0);
+        header.putInt(compressed.length);
+        header.putShort((short) name.length);
+        header.put(name);
+
+        File file = directory.resolve(fileName).toFile();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header.array());
+        out.write(compressed);
+        Files.write(file.toPath(), out.toByteArray());
+        return file;
+    }
+
+    private static byte[] encodeMaterialPalette(List<ZStructureBlock> blocks) throws IOException {
+        List<Material> materials = new ArrayList<>();
+        for (ZStructureBlock block : blocks) {
+            if (!materials.contains(block.material())) {
+                materials.add(block.material());
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(0);
+        out.writeInt(materials.size());
+        for (Material material : materials) {
+            out.writeUTF(material.name());
+        }
+        out.writeInt(blocks.size());
+        for (ZStructureBlock block : blocks) {
+            out.writeShort(block.x());
+            out.writeShort(block.y());
+            out.writeShort(block.z());
+            out.writeByte(materials.indexOf(block.material()));
+            out.writeUTF(block.blockDataString());
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,103 @@
+package fr.leabar.zstructure.io;
+
+import fr.leabar.zstructure.TestStructures;
+import fr.leabar.zstructure.data.ZStructureData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructurePackTest {
+    private static final String LONG_NAME = "a_structure_name_longer_than_the_header_allows";
+
+    @TempDir
+    Path directory;
+
+    private final ZStructureWriter writer = new ZStructureWriter();
+    private final ZStructureReader reader = new ZStructureReader();
+
+    @Test
+    void entriesRoundTripLazily() throws IOException {
+        ZStructureData first = TestStructures.random("first", 8, 5, 10, 1);
+        ZStructureData second = TestStructures.layered("second", 20, 18, 17);
+        File file = directory.resolve("structures.zpack").toFile();
+        try (ZStructurePackWriter packWriter = ZStructurePackWriter.open(file, writer, reader)) {
+            packWriter.add(first);
+            packWriter.add(LONG_NAME, second);
+        }
+
+        try (ZStructurePack pack = ZStructurePack.open(file, reader)) {
+            assertEquals(Set.of("first", LONG_NAME), pack.getNames());
+            ZStructurePack.Entry entry = pack.getEntry(LONG_NAME);
+            assertFalse(entry.isLoaded());
+            assertEquals(LONG_NAME, entry.getMetadata().getName());
+            assertEquals(second.getBlockCount(), entry.getMetadata().getBlockCount());
+            assertTrue(entry.getMetadata().getRawSize() > 0);
+
+            ZStructureData loaded = pack.getStructure(LONG_NAME);
+            assertTrue(entry.isLoaded());
+            assertEquals(LONG_NAME, loaded.getName());
+            assertEquals(second.getBlocks(), loaded.getBlocks());
+            assertEquals(first.getBlocks(), pack.getStructure("first").getBlocks());
+        }
+    }
+
+    @Test
+    void appendAndRemoveEntries() throws IOException {
+        ZStructureData first = TestStructures.random("first", 8, 5, 10, 1);
+        ZStructureData second = TestStructures.random("second", 4, 4, 4, 2);
+        File single = directory.resolve("single.zstruct").toFile();
+        writer.write(second, single);
+        File file = directory.resolve("structures.zpack").toFile();
+        try (ZStructurePackWriter packWriter = ZStructurePackWriter.open(file, writer, reader)) {
+            packWriter.add(first);
+        }
+        try (ZStructurePackWriter packWriter = ZStructurePackWriter.open(file, writer, reader)) {
+            packWriter.add("copied", single);
+            assertTrue(packWriter.remove("first"));
+            assertFalse(packWriter.remove("missing"));
+        }
+
+        try (ZStructurePack pack = ZStructurePack.open(file, reader)) {
+            assertEquals(Set.of("copied"), pack.getNames());
+            assertEquals("copied", pack.getStructure("copied").getName());
+            assertEquals(second.getBlocks(), pack.getStructure("copied").getBlocks());
+        }
+    }
+
+    @Test
+    void compactReclaimsDeadEntries() throws IOException {
+        ZStructureData first = TestStructures.random("first", 8, 5, 10, 1);
+        ZStructureData second = TestStructures.layered("second", 20, 18, 17);
+        File file = directory.resolve("structures.zpack").toFile();
+        try (ZStructurePackWriter packWriter = ZStructurePackWriter.open(file, writer, reader)) {
+            packWriter.add(first);
+            packWriter.add(second);
+            assertEquals(0, packWriter.getDeadBytes());
+        }
+        try (ZStructurePackWriter packWriter = ZStructurePackWriter.open(file, writer, reader)) {
+            assertEquals(0, packWriter.getDeadBytes());
+            packWriter.add(second);
+            assertTrue(packWriter.remove("first"));
+            packWriter.flush();
+            long dead = packWriter.getDeadBytes();
+            long bloated = file.length();
+            assertTrue(dead > 0);
+            packWriter.compact();
+            assertEquals(0, packWriter.getDeadBytes());
+            assertEquals(bloated - dead, file.length());
+            packWriter.add("copy", first);
+        }
+
+        try (ZStructurePack pack = ZStructurePack.open(file, reader)) {
+            assertEquals(Set.of("second", "copy"), pack.getNames());
+            assertEquals(second.getBlocks(), pack.getStructure("second").getBlocks());
+            assertEquals(first.getBlocks(), pack.getStructure("copy").getBlocks());
+        }
+    }
+}
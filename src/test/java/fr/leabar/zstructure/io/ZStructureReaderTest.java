@@ -0,0 +1,96 @@
+package fr.leabar.zstructure.io;
+
+import fr.leabar.zstructure.TestStructures;
+import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.data.ZStructureData;
+import fr.leabar.zstructure.data.ZStructurePalette;
+import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.io.format.ZStructureSectionIndex;
+import fr.leabar.zstructure.utils.ZStructureUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructureReaderTest {
+    private static final int WIDTH = 35, HEIGHT = 20, LENGTH = 18;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void regionReadsMatchTheFullStructure() throws IOException {
+        ZStructureData layered = TestStructures.layered("layered", WIDTH, HEIGHT, LENGTH);
+        File file = directory.resolve("layered.zstruct").toFile();
+        new ZStructureWriter().write(layered, file);
+        ZStructureReader reader = new ZStructureReader();
+        assertEquals(layered.getBlocks(), reader.read(file).getBlocks());
+
+        List<ZStructureBlock> expected = new ArrayList<>();
+        layered.forEachBlockInRegion(3, 2, 17, 18, 19, 17, block ->
+                expected.add(new ZStructureBlock(block.x() - 3, block.y() - 2, block.z() - 17, block.material(), block.blockDataString())));
+        assertEquals(expected, reader.readRegion(file, 3, 2, 17, 18, 19, 17).getBlocks());
+    }
+
+    @Test
+    void metadataFallsBackToTheSectionIndex() throws IOException {
+        File file = directory.resolve("metadata.zstruct").toFile();
+        new ZStructureWriter().write(TestStructures.layered("layered", WIDTH, HEIGHT, LENGTH), file);
+        ZStructureReader reader = new ZStructureReader();
+        ZStructureReader.ZStructureMetadata expected = reader.readMetadata(file);
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(68, 0);
+        Files.write(file.toPath(), bytes);
+        ZStructureReader.ZStructureMetadata metadata = reader.readMetadata(file);
+        assertEquals(expected.getRawSize(), metadata.getRawSize());
+        assertEquals(bytes.length, metadata.getFileSize());
+        assertEquals("layered", metadata.getName());
+    }
+
+    @Test
+    void sectionGridMustMatchTheHeader() throws IOException {
+        File file = writeWithIndex("grid.zstruct", ZStructureSectionIndex.forStructure(WIDTH + 16, HEIGHT, LENGTH, new ZStructurePalette()));
+        assertRejected(file);
+    }
+
+    @Test
+    void sectionsMustLieInsideTheData() throws IOException {
+        ZStructureSectionIndex index = ZStructureSectionIndex.forStructure(WIDTH, HEIGHT, LENGTH, new ZStructurePalette());
+        index.setSection(index.getSectionCount() - 1, 1, Integer.MAX_VALUE - 1, 8, 8);
+        File file = writeWithIndex("offset.zstruct", index);
+        assertRejected(file);
+    }
+
+    private void assertRejected(File file) {
+        ZStructureReader reader = new ZStructureReader();
+        assertThrows(IOException.class, () -> reader.read(file));
+        assertThrows(IOException.class, () -> reader.readRegion(file, 0, 0, 0, 4, 4, 4));
+        assertThrows(IOException.class, () -> reader.readMetadata(file));
+        assertThrows(IOException.class, () -> reader.openStream(file).close());
+    }
+
+    private File writeWithIndex(String name, ZStructureSectionIndex index) throws IOException {
+        File file = directory.resolve(name).toFile();
+        new ZStructureWriter().write(TestStructures.layered("layered", WIDTH, HEIGHT, LENGTH), file);
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        int dataSize = header.getInt(36);
+        byte[] compressedIndex = ZStructureUtils.compress(index.toByteArray(), ZStructureFormat.COMPRESSION_LEVEL_DEFAULT);
+
+        byte[] corrupted = new byte[ZStructureFormat.HEADER_SIZE + ZStructureFormat.HEADER_EXTENSION_SIZE + dataSize + compressedIndex.length];
+        header.get(0, corrupted, 0, corrupted.length - compressedIndex.length);
+        System.arraycopy(compressedIndex, 0, corrupted, corrupted.length - compressedIndex.length, compressedIndex.length);
+        ByteBuffer.wrap(corrupted).order(ByteOrder.LITTLE_ENDIAN).putInt(32, compressedIndex.length).putInt(68, 0);
+        Files.write(file.toPath(), corrupted);
+        return file;
+    }
+}
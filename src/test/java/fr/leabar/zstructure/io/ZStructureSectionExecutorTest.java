@@ -0,0 +1,48 @@
+package fr.leabar.zstructure.io;
+
+import fr.leabar.zstructure.TestStructures;
+import fr.leabar.zstructure.data.ZStructureData;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructureSectionExecutorTest {
+
+    @Test
+    void shutdownWaitsForRunningCalls() throws IOException {
+        ZStructureSectionExecutor executor = new ZStructureSectionExecutor(4);
+        ZStructureSectionExecutor acquired = ZStructureSectionExecutor.acquire(() -> executor);
+        executor.shutdown();
+        assertTrue(executor.isShutdown());
+        assertEquals(List.of(0, 2, 4, 6), acquired.map(4, i -> i * 2));
+        acquired.release();
+        assertThrows(IllegalStateException.class, () -> ZStructureSectionExecutor.acquire(() -> executor));
+    }
+
+    @Test
+    void sharedExecutorsOutliveTheirUsers() throws IOException {
+        ZStructureSectionExecutor shared = new ZStructureSectionExecutor(2);
+        ZStructureWriter writer = new ZStructureWriter();
+        ZStructureReader reader = new ZStructureReader();
+        writer.setSectionExecutor(shared);
+        reader.setSectionExecutor(shared);
+        writer.shutdown();
+        reader.shutdown();
+        assertFalse(shared.isShutdown());
+
+        ZStructureData data = TestStructures.random("shared", 20, 18, 33, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(data, out);
+        assertEquals(data.getBlocks(), reader.read(new ByteArrayInputStream(out.toByteArray())).getBlocks());
+
+        reader.setParallelism(3);
+        assertFalse(shared.isShutdown());
+        shared.shutdown();
+        assertThrows(IllegalStateException.class, () -> writer.write(data, new ByteArrayOutputStream()));
+    }
+}
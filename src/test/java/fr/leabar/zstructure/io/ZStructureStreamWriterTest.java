@@ -0,0 +1,47 @@
+package fr.leabar.zstructure.io;
+
+import fr.leabar.zstructure.TestStructures;
+import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.data.ZStructureData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructureStreamWriterTest {
+    private static final int WIDTH = 37, HEIGHT = 9, LENGTH = 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void streamedStructuresKeepTheirAir() throws IOException {
+        List<ZStructureBlock> blocks = new ArrayList<>();
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int z = 0; z < LENGTH; z++) {
+                    blocks.add(TestStructures.block(x, y, z, TestStructures.STATES[(x + y + z)%7 == 0 ? 1 : 0]));
+                }
+            }
+        }
+        File file = directory.resolve("streamed.zstruct").toFile();
+        ZStructureWriter writer = new ZStructureWriter();
+        try (ZStructureStreamWriter stream = writer.openStream(file, "streamed", WIDTH, HEIGHT, LENGTH)) {
+            for (ZStructureBlock block : blocks) {
+                stream.append(block);
+            }
+        }
+
+        ZStructureReader reader = new ZStructureReader();
+        ZStructureData data = reader.read(file);
+        assertEquals(blocks, data.getBlocks());
+        assertEquals(blocks.size(), data.getBlockCount());
+        assertFalse(reader.readMetadata(file).isSparse());
+    }
+}
@@ -0,0 +1,79 @@
+package fr.leabar.zstructure.serializer;
+
+import fr.leabar.zstructure.TestStructures;
+import fr.leabar.zstructure.data.ZStructureBlock;
+import fr.leabar.zstructure.io.format.ZStructureFormat;
+import fr.leabar.zstructure.utils.ZStructureUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZStructureSerializerTest {
+    private static final int SECTION_VOLUME = ZStructureFormat.SECTION_SIZE * ZStructureFormat.SECTION_SIZE * ZStructureFormat.SECTION_SIZE;
+
+    @Test
+    void uniformSectionsUseRunLength() throws IOException {
+        int[] values = new int[SECTION_VOLUME];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i < 1024 ? 0 : 1 + i/1024;
+        }
+        ZStructureSerializer.EncodedSection encoded = ZStructureSerializer.serializeSection(values, SECTION_VOLUME - 1024);
+        assertEquals(ZStructureFormat.SECTION_RUN_LENGTH, encoded.data()[0]);
+        assertTrue(encoded.data().length < 32);
+        assertArrayEquals(values, decode(encoded, 5));
+    }
+
+    @Test
+    void noisySectionsUseDenseOrSparse() throws IOException {
+        int[] dense = new int[SECTION_VOLUME];
+        int[] sparse = new int[SECTION_VOLUME];
+        for (int i = 0; i < dense.length; i++) {
+            dense[i] = 1 + (i * 7919)%5;
+        }
+        sparse[17] = 3;
+        sparse[4000] = 1;
+        ZStructureSerializer.EncodedSection denseEncoded = ZStructureSerializer.serializeSection(dense, SECTION_VOLUME);
+        ZStructureSerializer.EncodedSection sparseEncoded = ZStructureSerializer.serializeSection(sparse, 2);
+        assertEquals(ZStructureFormat.SECTION_DENSE, denseEncoded.data()[0]);
+        assertEquals(ZStructureFormat.SECTION_SPARSE, sparseEncoded.data()[0]);
+        assertArrayEquals(dense, decode(denseEncoded, 5));
+        assertArrayEquals(sparse, decode(sparseEncoded, 5));
+        assertEquals(0, ZStructureSerializer.serializeSection(new int[SECTION_VOLUME], 0).data().length);
+    }
+
+    @Test
+    void blockListRoundTrip() {
+        List<ZStructureBlock> blocks = TestStructures.randomBlocks(5, 4, 6, 5);
+        assertEquals(blocks, ZStructureSerializer.deserializeBlocks(ZStructureSerializer.serializeBlocks(blocks)));
+    }
+
+    @Test
+    void outOfRangePaletteIndexIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(0);
+        ZStructureUtils.writeVarInt(out, 1);
+        out.writeUTF("minecraft:stone");
+        out.writeInt(1);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        ZStructureUtils.writeVarInt(out, 3);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> ZStructureSerializer.deserializeBlocks(bytes.toByteArray()));
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    private static int[] decode(ZStructureSerializer.EncodedSection encoded, int paletteSize) throws IOException {
+        int size = ZStructureFormat.SECTION_SIZE;
+        int[] values = new int[SECTION_VOLUME];
+        ZStructureSerializer.deserializeSection(ByteBuffer.wrap(encoded.data()), 0, 0, 0, size, size, size, paletteSize,
+                (x, y, z, paletteIndex) -> values[(x * size + y) * size + z] = paletteIndex + 1);
+        return values;
+    }
+}